@@ -12,12 +12,20 @@ public class AdaptationOption {
 	// Boolean which indicates if this option is verified
 	public boolean isVerified = false;
 
+	// The amount of cycles since the qualities of this option were verified (0 if they were verified in this cycle)
+	public int verificationAge = 0;
+
+	// True if some of the qualities the planner uses were only estimated by screening, or not verified by lazy verification
+	public boolean isEstimated = false;
+
 	protected AdaptationOption getCopy() {
 		AdaptationOption newOption = new AdaptationOption();
 		newOption.system = system.getCopy();
 		newOption.verificationResults = verificationResults.getCopy();
 		newOption.overallIndex = overallIndex;
 		newOption.isVerified = isVerified;
+		newOption.verificationAge = verificationAge;
+		newOption.isEstimated = isEstimated;
 		return newOption;
 	}
 
@@ -29,17 +37,21 @@ public class AdaptationOption {
 
 	public String toModelString() {
 		StringBuilder string = new StringBuilder();
-		string.append("\nManagedSystem deltaIoT = {{");
-		Mote mote;
-		for (int i : system.motes.keySet()) {
-			mote = system.getMote(i);
+		appendModelString(string);
+		return string.toString();
+	}
 
-			string.append(mote.getModelString());
-			string.append(",");
+	/**
+	 * Appends the string that is used to adjust the configuration in the quality models to the given string.
+	 */
+	public void appendModelString(StringBuilder string) {
+		string.append("\nManagedSystem deltaIoT = {{");
+		for (Mote mote : system.motes.values()) {
+			mote.appendModelString(string);
+			string.append(',');
 		}
 
 		string.setLength(string.length() - 1);
 		string.append("\n}};");
-		return string.toString();
 	}
 }
@@ -0,0 +1,227 @@
+package mapek;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The adaptation options of a cycle: every combination of the distributions of the motes with 2 parents, on top of a
+ * shared base configuration (the distribution of the first link of such a mote is a multiple of the distribution gap,
+ * capped at 100, the second link gets the rest).
+ * Options are not composed up front. An option is encoded by its index, a mixed-radix number with a digit (the
+ * distribution) for every mote with 2 parents, and it is only materialized when it is accessed. Materialized options
+ * are kept, so the qualities which are set on an option are seen by all users of the space. The options share the
+ * topology of the base configuration, each of them only keeps the power and distribution of the links (see CompactSystem).
+ * The options are in the order in which the feedback loop used to compose them: the options of the first k motes
+ * (with the distribution of the others at 0) come before those which change the distribution of mote k + 1.
+ */
+public class AdaptationSpace extends AbstractList<AdaptationOption> implements RandomAccess {
+
+	final Topology topology;
+	final short[] basePowers;
+	final byte[] baseDistributions;
+	// The motes with 2 parents, in the order of the managed system, and the first of their links in the topology
+	private final int[] moteIds;
+	final int[] moteLinks;
+	// The distributions of the first link of those motes
+	final int[] distributions;
+	// The amount of options when only the first m motes are changed (sizes[0] is the base configuration alone)
+	private final int[] sizes;
+
+	private final AtomicReferenceArray<AdaptationOption> options;
+
+	/**
+	 * @param base the configuration the options are composed on (its distributions are those of option 0).
+	 * @param distributionGap the gap between the distributions of the options.
+	 */
+	public AdaptationSpace(AdaptationOption base, int distributionGap) {
+		topology = new Topology(base.system);
+		basePowers = topology.getPowers(base.system);
+		baseDistributions = topology.getDistributions(base.system);
+
+		moteIds = base.system.motes.values().stream()
+			.filter(mote -> mote.getLinks().size() == 2).mapToInt(Mote::getMoteId).toArray();
+		moteLinks = new int[moteIds.length];
+		for (int m = 0; m < moteIds.length; m++) {
+			moteLinks[m] = topology.linkStart[topology.indexOf(moteIds[m])];
+		}
+
+		distributions = new int[(int) Math.ceil(100 / (double) distributionGap) + 1];
+		for (int i = 0; i < distributions.length; i++) {
+			distributions[i] = Math.min(i * distributionGap, 100);
+		}
+
+		sizes = new int[moteIds.length + 1];
+		sizes[0] = 1;
+		for (int m = 1; m <= moteIds.length; m++) {
+			long size = (long) sizes[m - 1] * distributions.length;
+			if (size > Integer.MAX_VALUE) {
+				throw new RuntimeException(String.format("The adaptation space of %d motes with %d distributions is too large.",
+					moteIds.length, distributions.length));
+			}
+			sizes[m] = (int) size;
+		}
+
+		options = new AtomicReferenceArray<>(sizes[moteIds.length]);
+	}
+
+	@Override
+	public int size() {
+		return options.length();
+	}
+
+	/**
+	 * @return the option at the index, materialized the first time it is accessed.
+	 */
+	@Override
+	public AdaptationOption get(int index) {
+		AdaptationOption option = options.get(index);
+		if (option == null) {
+			options.compareAndSet(index, null, materialize(index));
+			option = options.get(index);
+		}
+		return option;
+	}
+
+	/**
+	 * @return the option at the index if it has been accessed before, null otherwise.
+	 */
+	AdaptationOption getIfMaterialized(int index) {
+		return options.get(index);
+	}
+
+	/**
+	 * @return the options which have been accessed so far, in index order (without materializing the others).
+	 */
+	public List<AdaptationOption> getMaterialized() {
+		List<AdaptationOption> materialized = new ArrayList<>();
+		for (int i = 0; i < options.length(); i++) {
+			AdaptationOption option = options.get(i);
+			if (option != null) {
+				materialized.add(option);
+			}
+		}
+		return materialized;
+	}
+
+	private AdaptationOption materialize(int index) {
+		int[] digits = decode(index);
+		int[] moteDistributions = new int[moteIds.length];
+		for (int m = 0; m < moteIds.length; m++) {
+			moteDistributions[m] = distributions[digits[m]];
+		}
+		return compose(moteDistributions, index);
+	}
+
+	/**
+	 * @param moteDistributions the distribution of the first link of every mote with 2 parents (the second link gets the rest).
+	 * @return an option on top of the base configuration, which shares its topology with the options of the space.
+	 */
+	AdaptationOption compose(int[] moteDistributions, int index) {
+		byte[] optionDistributions = baseDistributions.clone();
+		for (int m = 0; m < moteIds.length; m++) {
+			optionDistributions[moteLinks[m]] = (byte) moteDistributions[m];
+			optionDistributions[moteLinks[m] + 1] = (byte) (100 - moteDistributions[m]);
+		}
+
+		AdaptationOption option = new AdaptationOption();
+		option.system = new CompactSystem(topology, basePowers.clone(), optionDistributions);
+		option.overallIndex = index;
+		return option;
+	}
+
+	/**
+	 * @param moteDistributions the distribution of the first link of every mote with 2 parents.
+	 * @return the index of the option with those distributions, or -1 if they are not all on the grid of the space.
+	 */
+	public int indexOf(int[] moteDistributions) {
+		int[] digits = new int[moteIds.length];
+		for (int m = 0; m < moteIds.length; m++) {
+			digits[m] = Arrays.binarySearch(distributions, moteDistributions[m]);
+			if (digits[m] < 0) {
+				return -1;
+			}
+		}
+		return encode(digits);
+	}
+
+	/**
+	 * @return the distribution (index in the distributions) of every mote with 2 parents in the option at the index.
+	 */
+	public int[] decode(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size()));
+		}
+		int[] digits = new int[moteIds.length];
+		int changes = distributions.length - 1;
+		for (int m = moteIds.length; m > 1; m--) {
+			if (index < sizes[m - 1]) {
+				// One of the options of the previous motes, with this mote at the first distribution
+				digits[m - 1] = 0;
+			} else {
+				index -= sizes[m - 1];
+				digits[m - 1] = index % changes + 1;
+				index /= changes;
+			}
+		}
+		if (moteIds.length > 0) {
+			digits[0] = index;
+		}
+		return digits;
+	}
+
+	/**
+	 * @return the index of the option with the given distribution (index in the distributions) for every mote with 2 parents.
+	 */
+	public int encode(int[] digits) {
+		if (moteIds.length == 0) {
+			return 0;
+		}
+		int index = digits[0];
+		int changes = distributions.length - 1;
+		for (int m = 2; m <= moteIds.length; m++) {
+			if (digits[m - 1] != 0) {
+				index = sizes[m - 1] + index * changes + digits[m - 1] - 1;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * @return the option of which the distributions are the closest to those of the given system (the first of equally
+	 *   close distributions), without materializing the other options.
+	 */
+	public AdaptationOption getClosestOption(ManagedSystem system) {
+		int[] digits = new int[moteIds.length];
+		for (int m = 0; m < moteIds.length; m++) {
+			Mote mote = system.getMote(moteIds[m]);
+			int minDifference = Integer.MAX_VALUE;
+			for (int d = 0; d < distributions.length; d++) {
+				int difference = Math.abs(distributions[d] - mote.getLink(0).getDistribution())
+					+ Math.abs(100 - distributions[d] - mote.getLink(1).getDistribution());
+				if (difference < minDifference) {
+					digits[m] = d;
+					minDifference = difference;
+				}
+			}
+		}
+		return get(encode(digits));
+	}
+
+	/**
+	 * @return the ids of the motes with 2 parents, in the order of their digits.
+	 */
+	public int[] getMoteIds() {
+		return moteIds.clone();
+	}
+
+	/**
+	 * @return the distributions of the first link of a mote with 2 parents, in the order of the digits.
+	 */
+	public int[] getDistributions() {
+		return distributions.clone();
+	}
+}
@@ -0,0 +1,100 @@
+package mapek;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coarse-to-fine search over the distributions of the motes with 2 parents. The adaptation space is composed on a
+ * coarse grid, after it has been verified the grid is refined around the best options: every refinement halves the gap,
+ * and adds the options which change the distribution of one mote of such an option by the gap (up or down). The
+ * refinement stops once the gap would drop below the minimum gap.
+ * Changing one mote at a time keeps a refinement linear in the amount of motes with 2 parents, a full grid around an
+ * option would again grow exponentially with it.
+ */
+public class AdaptiveGrid {
+
+	private final AdaptationSpace space;
+	private final int minGap;
+	private int gap;
+
+	// The options which are not on the grid of the space, keyed on their distributions
+	private final Map<String, AdaptationOption> refinedOptions = new HashMap<>();
+
+	/**
+	 * @param space the options on the coarse grid.
+	 * @param coarseGap the distribution gap of the space.
+	 * @param minGap the smallest gap the grid is refined to.
+	 */
+	public AdaptiveGrid(AdaptationSpace space, int coarseGap, int minGap) {
+		this.space = space;
+		this.gap = coarseGap;
+		this.minGap = Math.max(1, minGap);
+	}
+
+	/**
+	 * @return true if the gap can be halved without dropping below the minimum gap.
+	 */
+	public boolean canRefine() {
+		return gap / 2 >= minGap;
+	}
+
+	/**
+	 * Halves the gap and composes the options around the given ones which have not been composed before.
+	 * @param regions the options to refine around (options of the space or of previous refinements).
+	 * @return the new options, empty if the gap would drop below the minimum gap.
+	 */
+	public List<AdaptationOption> refine(List<AdaptationOption> regions) {
+		List<AdaptationOption> options = new ArrayList<>();
+		if (!canRefine()) {
+			return options;
+		}
+		gap /= 2;
+
+		for (AdaptationOption region : regions) {
+			int[] distributions = getDistributions(region);
+			for (int m = 0; m < distributions.length; m++) {
+				for (int step : new int[] { -gap, gap }) {
+					int[] neighbour = distributions.clone();
+					neighbour[m] = Math.max(0, Math.min(100, distributions[m] + step));
+					if (neighbour[m] == distributions[m] || space.indexOf(neighbour) >= 0) {
+						continue;
+					}
+					String key = Arrays.toString(neighbour);
+					if (!refinedOptions.containsKey(key)) {
+						// Indices after those of the space, so every option of the cycle has its own index
+						AdaptationOption option = space.compose(neighbour, space.size() + refinedOptions.size());
+						refinedOptions.put(key, option);
+						options.add(option);
+					}
+				}
+			}
+		}
+		return options;
+	}
+
+	/**
+	 * @return the distribution of the first link of every mote with 2 parents in the option, in the order of the space.
+	 */
+	private int[] getDistributions(AdaptationOption option) {
+		int[] moteIds = space.getMoteIds();
+		int[] distributions = new int[moteIds.length];
+		for (int m = 0; m < moteIds.length; m++) {
+			distributions[m] = option.system.getMote(moteIds[m]).getLink(0).getDistribution();
+		}
+		return distributions;
+	}
+
+	public int getGap() {
+		return gap;
+	}
+
+	/**
+	 * @return the amount of options which were composed by the refinements.
+	 */
+	public int getRefinedCount() {
+		return refinedOptions.size();
+	}
+}
@@ -0,0 +1,150 @@
+package mapek;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A managed system which shares its topology with the other adaptation options of the cycle, and only keeps the power
+ * and distribution of its links (in the order of the topology).
+ * The motes and links are views on these arrays, created when they are accessed: changes to the power or distribution
+ * of a link are written to the arrays. The motes can not be replaced.
+ */
+final class CompactSystem extends ManagedSystem {
+
+	// Transient, so the system is serialized as its motes only
+	private final transient Topology topology;
+	private final transient short[] powers;
+	private final transient byte[] distributions;
+
+	CompactSystem(Topology topology, short[] powers, byte[] distributions) {
+		super((Map<Integer, Mote>) null);
+		this.topology = topology;
+		this.powers = powers;
+		this.distributions = distributions;
+		motes = new MoteMap();
+	}
+
+	@Override
+	public CompactSystem getCopy() {
+		return new CompactSystem(topology, powers.clone(), distributions.clone());
+	}
+
+
+	private final class MoteMap extends AbstractMap<Integer, Mote> {
+
+		@Override
+		public Mote get(Object key) {
+			int index = key instanceof Integer ? topology.indexOf((Integer) key) : -1;
+			return index < 0 ? null : new MoteView(index);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof Integer && topology.indexOf((Integer) key) >= 0;
+		}
+
+		@Override
+		public int size() {
+			return topology.getMoteCount();
+		}
+
+		@Override
+		public Set<Map.Entry<Integer, Mote>> entrySet() {
+			return new AbstractSet<Map.Entry<Integer, Mote>>() {
+				@Override
+				public Iterator<Map.Entry<Integer, Mote>> iterator() {
+					return new Iterator<Map.Entry<Integer, Mote>>() {
+						private int next = 0;
+
+						@Override
+						public boolean hasNext() {
+							return next < topology.getMoteCount();
+						}
+
+						@Override
+						public Map.Entry<Integer, Mote> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							int index = next++;
+							return new SimpleImmutableEntry<>(topology.moteIds[index], new MoteView(index));
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return topology.getMoteCount();
+				}
+			};
+		}
+	}
+
+	private final class MoteView extends Mote {
+
+		MoteView(int index) {
+			super(topology.moteIds[index], topology.energyLevels[index], topology.loads[index], topology.queueSizes[index]);
+			links = new LinkList(topology.linkStart[index], topology.linkStart[index + 1]);
+		}
+	}
+
+	private final class LinkList extends AbstractList<Link> implements RandomAccess {
+		private final int start;
+		private final int end;
+
+		LinkList(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public Link get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size()));
+			}
+			return new LinkView(start + index);
+		}
+
+		@Override
+		public int size() {
+			return end - start;
+		}
+	}
+
+	private final class LinkView extends Link {
+		private final transient int link;
+
+		LinkView(int link) {
+			super(topology.sources[link], topology.destinations[link], powers[link], distributions[link]);
+			this.link = link;
+		}
+
+		@Override
+		public int getPower() {
+			return powers[link];
+		}
+
+		@Override
+		public void setPower(int power) {
+			powers[link] = (short) power;
+			this.power = power;
+		}
+
+		@Override
+		public int getDistribution() {
+			return distributions[link];
+		}
+
+		@Override
+		public void setDistribution(int distribution) {
+			distributions[link] = (byte) distribution;
+			this.distribution = distribution;
+		}
+	}
+}
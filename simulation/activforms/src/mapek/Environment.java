@@ -59,7 +59,8 @@ public class Environment {
 		string.append("Environment environment = {\n{");
 
 		for (SNR snr : linksSNR) {
-			string.append(String.format("{%d, %d, %d},", snr.source, snr.destination, Math.round(snr.SNR)));
+			string.append('{').append(snr.source).append(", ").append(snr.destination).append(", ")
+				.append(Math.round(snr.SNR)).append("},");
 		}
 
 		string.setLength(string.length() - 1);
@@ -67,7 +68,7 @@ public class Environment {
 		string.append("},\n{");
 
 		for (TrafficProbability load : motesLoad) {
-			string.append(String.format("{%d, %d},", load.moteId, Math.round(load.load)));
+			string.append('{').append(load.moteId).append(", ").append(Math.round(load.load)).append("},");
 		}
 
 		string.setLength(string.length() - 1);
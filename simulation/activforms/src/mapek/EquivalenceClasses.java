@@ -0,0 +1,208 @@
+package mapek;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Groups the options of an adaptation space which have the same qualities in an environment: options which only
+ * differ in the distributions of motes that carry no traffic. A mote carries no traffic if it never sends packets of
+ * its own (its traffic probability rounds to 0, as in the rendered environment) and none of the links towards it which
+ * carry traffic has a distribution above 0. The distribution of such a mote is canonicalized to the first distribution,
+ * the option with the canonical distributions is the representative of its class.
+ * Only the representatives have to be verified (or predicted), their qualities are then copied to the other members.
+ */
+public class EquivalenceClasses {
+
+	private final AdaptationSpace space;
+	// The digit which sets the distribution of every link (-1 if the distribution is that of the base configuration)
+	private final int[] linkDigits;
+	// The index of the representative of every option (null if every option is its own representative)
+	private final int[] representatives;
+	private final int[] representativeIndices;
+
+	public EquivalenceClasses(AdaptationSpace space, Environment environment) {
+		this.space = space;
+		Topology topology = space.topology;
+		linkDigits = new int[topology.getLinkCount()];
+		Arrays.fill(linkDigits, -1);
+		for (int m = 0; m < space.moteLinks.length; m++) {
+			linkDigits[space.moteLinks[m]] = m;
+			linkDigits[space.moteLinks[m] + 1] = m;
+		}
+
+		boolean[] sending = new boolean[topology.getMoteCount()];
+		Arrays.fill(sending, true);
+		for (TrafficProbability traffic : environment.motesLoad) {
+			int mote = topology.indexOf(traffic.moteId);
+			if (mote >= 0) {
+				sending[mote] = Math.round(traffic.load) > 0;
+			}
+		}
+
+		// If every mote with 2 parents sends packets of its own, every option is its own representative
+		boolean canonical = true;
+		for (int m = 0; m < space.moteLinks.length; m++) {
+			canonical &= sending[topology.indexOf(topology.sources[space.moteLinks[m]])];
+		}
+
+		if (canonical) {
+			representatives = null;
+			representativeIndices = null;
+			return;
+		}
+
+		int[] order = getSendingOrder(topology);
+		representatives = new int[space.size()];
+		List<Integer> indices = new ArrayList<>();
+		boolean[] carrying = new boolean[topology.getMoteCount()];
+		for (int i = 0; i < representatives.length; i++) {
+			int[] digits = space.decode(i);
+			getCarrying(topology, order, sending, digits, carrying);
+			for (int m = 0; m < digits.length; m++) {
+				if (!carrying[topology.indexOf(topology.sources[space.moteLinks[m]])]) {
+					digits[m] = 0;
+				}
+			}
+			representatives[i] = space.encode(digits);
+			if (representatives[i] == i) {
+				indices.add(i);
+			}
+		}
+		representativeIndices = indices.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * @return the indices of the motes, ordered so every mote comes before the destinations of its links.
+	 */
+	private static int[] getSendingOrder(Topology topology) {
+		int amtMotes = topology.getMoteCount();
+		int[] incoming = new int[amtMotes];
+		for (int link = 0; link < topology.getLinkCount(); link++) {
+			int destination = topology.indexOf(topology.destinations[link]);
+			if (destination >= 0) {
+				incoming[destination]++;
+			}
+		}
+
+		int[] order = new int[amtMotes];
+		int size = 0;
+		for (int mote = 0; mote < amtMotes; mote++) {
+			if (incoming[mote] == 0) {
+				order[size++] = mote;
+			}
+		}
+		for (int next = 0; next < size; next++) {
+			int mote = order[next];
+			for (int link = topology.linkStart[mote]; link < topology.linkStart[mote + 1]; link++) {
+				int destination = topology.indexOf(topology.destinations[link]);
+				if (destination >= 0 && --incoming[destination] == 0) {
+					order[size++] = destination;
+				}
+			}
+		}
+		if (size != amtMotes) {
+			throw new RuntimeException("The links of the managed system contain a cycle.");
+		}
+		return order;
+	}
+
+	/**
+	 * Fills in which motes carry traffic (of their own, or received from other motes) in the option with the digits.
+	 */
+	private void getCarrying(Topology topology, int[] order, boolean[] sending, int[] digits, boolean[] carrying) {
+		byte[] distributions = space.baseDistributions;
+		System.arraycopy(sending, 0, carrying, 0, carrying.length);
+		for (int mote : order) {
+			if (!carrying[mote]) {
+				continue;
+			}
+			for (int link = topology.linkStart[mote]; link < topology.linkStart[mote + 1]; link++) {
+				int destination = topology.indexOf(topology.destinations[link]);
+				if (destination >= 0 && getDistribution(link, digits, distributions) > 0) {
+					carrying[destination] = true;
+				}
+			}
+		}
+	}
+
+	private int getDistribution(int link, int[] digits, byte[] distributions) {
+		int m = linkDigits[link];
+		if (m < 0) {
+			return distributions[link];
+		}
+		// The first link of a mote with 2 parents takes the distribution of its digit, the second one the rest
+		int distribution = space.distributions[digits[m]];
+		return link == space.moteLinks[m] ? distribution : 100 - distribution;
+	}
+
+	/**
+	 * @return the index of the representative of the option at the index.
+	 */
+	public int getRepresentative(int index) {
+		return representatives == null ? index : representatives[index];
+	}
+
+	/**
+	 * @return the representative of the option.
+	 */
+	public AdaptationOption getRepresentative(AdaptationOption option) {
+		int index = getRepresentative(option.overallIndex);
+		return index == option.overallIndex ? option : space.get(index);
+	}
+
+	/**
+	 * @return the representatives of all the classes, in the order of the space (materialized when they are accessed).
+	 */
+	public List<AdaptationOption> getRepresentatives() {
+		if (representativeIndices == null) {
+			return space;
+		}
+		return new Representatives();
+	}
+
+	public int getClassCount() {
+		return representativeIndices == null ? space.size() : representativeIndices.length;
+	}
+
+	/**
+	 * Copies the qualities of the representatives which were verified to the other members of their class.
+	 * @return the amount of members the qualities were copied to.
+	 */
+	public int fanOut() {
+		if (representatives == null) {
+			return 0;
+		}
+		int copied = 0;
+		for (int i = 0; i < representatives.length; i++) {
+			if (representatives[i] != i) {
+				// Representatives which were never accessed are not verified either
+				AdaptationOption representative = space.getIfMaterialized(representatives[i]);
+				if (representative != null && representative.isVerified) {
+					AdaptationOption member = space.get(i);
+					member.verificationResults = representative.verificationResults.getCopy();
+					member.isVerified = true;
+					member.verificationAge = representative.verificationAge;
+					copied++;
+				}
+			}
+		}
+		return copied;
+	}
+
+
+	private class Representatives extends AbstractList<AdaptationOption> implements RandomAccess {
+
+		@Override
+		public AdaptationOption get(int index) {
+			return space.get(representativeIndices[index]);
+		}
+
+		@Override
+		public int size() {
+			return representativeIndices.length;
+		}
+	}
+}
@@ -1,17 +1,22 @@
 package mapek;
 
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import deltaiot.client.Effector;
 import deltaiot.client.Probe;
 import deltaiot.services.LinkSettings;
 import deltaiot.services.QoS;
+import smc.BoundPruning;
 import smc.runmodes.SMCConnector;
 import smc.runmodes.SMCConnector.Mode;
 import smc.runmodes.SMCConnector.TaskType;
@@ -28,6 +33,14 @@ public class FeedbackLoop {
 	// Knowledge
 	private final int DISTRIBUTION_GAP = ConfigLoader.getInstance().getDistributionGap();
 	private final boolean timeInReadableFormat = ConfigLoader.getInstance().timeInReadableFormat();
+	private final boolean optionDeduplication = ConfigLoader.getInstance().isOptionDeduplicationEnabled();
+	// Drops the options which can not meet the goals before they are verified (null if disabled)
+	private final BoundPruning boundPruning = ConfigLoader.getInstance().isBoundPruningEnabled() ? new BoundPruning() : null;
+	// Coarse-to-fine search over the distributions (see AdaptiveGrid)
+	private final boolean adaptiveGrid = ConfigLoader.getInstance().isAdaptiveGridEnabled();
+	private final int ADAPTIVE_COARSE_GAP = Integer.parseInt(ConfigLoader.getInstance().getProperty("adaptiveGrid.coarseGap", "50").trim());
+	private final int ADAPTIVE_MIN_GAP = Integer.parseInt(ConfigLoader.getInstance().getProperty("adaptiveGrid.minGap", "5").trim());
+	private final int ADAPTIVE_REGIONS = Integer.parseInt(ConfigLoader.getInstance().getProperty("adaptiveGrid.regions", "3").trim());
 	
 	Configuration currentConfiguration;
 	Configuration previousConfiguration;
@@ -39,9 +52,18 @@ public class FeedbackLoop {
 	List<SNREquation> snrEquations = new LinkedList<>();
 
 	// The current adaptation options are the options specific to the current cycle
-	List<AdaptationOption> currentAdaptationOptions = new LinkedList<>();
+	AdaptationSpace currentAdaptationOptions;
+	// The classes of options with the same qualities in the current environment (null without deduplication)
+	EquivalenceClasses equivalenceClasses;
 	List<AdaptationOption> verifiedOptions = new LinkedList<>();
 
+	// The amount of options and of classes of options (verified or predicted) over all the cycles
+	long amountOfOptions = 0;
+	long amountOfClasses = 0;
+	// The amount of options on the coarse grid and of options added by its refinements over all the cycles
+	long amountOfCoarseOptions = 0;
+	long amountOfRefinedOptions = 0;
+
 	SMCConnector smcConnector;
 	Goals goals = Goals.getInstance();
 
@@ -75,6 +97,7 @@ public class FeedbackLoop {
 		System.out.println("Feedback loop started.");
 
 		LocalDateTime now;
+		long collectionTime = getCollectionTime();
 
 		// Run the mape-k loop and simulator for the specified amount of cycles
 		for (int i = 1; i <= ConfigLoader.getInstance().getAmountOfCycles(); i++) {
@@ -90,6 +113,32 @@ public class FeedbackLoop {
 			// Start the monitor part of the mapek loop
 			monitor();
 		}
+
+		smcConnector.printStatistics();
+		if (optionDeduplication) {
+			System.out.println(String.format("Option deduplication: %d classes for %d options (%.1f%%)",
+				amountOfClasses, amountOfOptions, amountOfOptions == 0 ? 0 : amountOfClasses * 100.0 / amountOfOptions));
+		}
+		if (boundPruning != null) {
+			boundPruning.printStatistics();
+		}
+		if (adaptiveGrid) {
+			System.out.println(String.format("Adaptive grid: %d options on the coarse grid, %d added by refinements",
+				amountOfCoarseOptions, amountOfRefinedOptions));
+		}
+		System.out.println(String.format("Garbage collection: %.1f ms per cycle",
+			(getCollectionTime() - collectionTime) / (double) ConfigLoader.getInstance().getAmountOfCycles()));
+	}
+
+	/**
+	 * @return the time (in ms) the garbage collectors of the JVM spent so far.
+	 */
+	public static long getCollectionTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, collector.getCollectionTime());
+		}
+		return time;
 	}
 
 
@@ -174,24 +223,100 @@ public class FeedbackLoop {
 		composeAdaptationOptions(newPowerSettingsConfig);
 
 		// Pass the adaptionOptions and the environment (noise and load) to the connector
-		smcConnector.setAdaptationOptions(currentAdaptationOptions, currentConfiguration.environment);
+		// (only one option of every class of options with the same qualities, if the options are deduplicated)
+		List<AdaptationOption> options = currentAdaptationOptions;
+		AdaptationOption failsafeOption = findFailsafeOption();
+		if (optionDeduplication) {
+			equivalenceClasses = new EquivalenceClasses(currentAdaptationOptions, currentConfiguration.environment);
+			options = equivalenceClasses.getRepresentatives();
+			failsafeOption = equivalenceClasses.getRepresentative(failsafeOption);
+			amountOfOptions += currentAdaptationOptions.size();
+			amountOfClasses += equivalenceClasses.getClassCount();
+		}
+		smcConnector.setAdaptationOptions(prune(options, true), currentConfiguration.environment);
+		smcConnector.setFailsafeOption(failsafeOption);
 
 		// let the model checker and/or machine learner start to predict which adaption options 
 		// should be considered by the planner
-		smcConnector.verify();
+		// (with the adaptive grid, the refinements are verified in the same cycle, which ends once they are verified)
+		if (adaptiveGrid) {
+			smcConnector.startVerification();
+		} else {
+			smcConnector.verify();
+		}
+		if (optionDeduplication) {
+			equivalenceClasses.fanOut();
+		}
 
 		// Only consider those options which have been formally verified by the model checker
+		// (options which were never accessed are not verified, so they do not have to be materialized)
 		verifiedOptions.clear();
-		for (AdaptationOption option : currentAdaptationOptions) {
+		for (AdaptationOption option : currentAdaptationOptions.getMaterialized()) {
 			if (option.isVerified) {
 				verifiedOptions.add(option);
 			}
 		}
 
+		if (adaptiveGrid) {
+			refineAdaptationOptions();
+			smcConnector.endCycle();
+		}
+
 		// Continue to the planning step.
 		planning();
 	}
 
+	/**
+	 * @param report if the ratio of the options which can not meet the goals is printed (for the options of the cycle).
+	 * @return the options which may meet the goals (all the options without bound pruning).
+	 */
+	List<AdaptationOption> prune(List<AdaptationOption> options, boolean report) {
+		if (boundPruning == null || options.isEmpty()) {
+			return options;
+		}
+		List<AdaptationOption> candidates = boundPruning.prune(options, currentConfiguration.environment,
+			smcConnector.getPlanningGoals());
+		if (report) {
+			System.out.print(String.format(";%.3f", 1 - candidates.size() / (double) options.size()));
+		}
+		return candidates;
+	}
+
+	/**
+	 * Refines the grid of the distributions around the verified options with the lowest energy consumption which
+	 * meet the goals, and verifies the new options, until the minimum gap is reached or none of the options meets the goals.
+	 * The refinements are verified within the deadline of the cycle, they are not sent to the learners.
+	 */
+	void refineAdaptationOptions() {
+		AdaptiveGrid grid = new AdaptiveGrid(currentAdaptationOptions, ADAPTIVE_COARSE_GAP, ADAPTIVE_MIN_GAP);
+		amountOfCoarseOptions += currentAdaptationOptions.size();
+
+		List<Goal> planningGoals = smcConnector.getPlanningGoals();
+		while (grid.canRefine()) {
+			List<AdaptationOption> regions = verifiedOptions.stream()
+				.filter(option -> planningGoals.stream().allMatch(goal -> goals.meetsGoal(goal, option.verificationResults)))
+				.sorted(Comparator.comparingDouble(option -> option.verificationResults.energyConsumption))
+				.limit(ADAPTIVE_REGIONS)
+				.collect(Collectors.toList());
+			if (regions.isEmpty()) {
+				break;
+			}
+
+			List<AdaptationOption> options = prune(grid.refine(regions), false);
+			if (options.isEmpty()) {
+				continue;
+			}
+			smcConnector.setAdaptationOptions(options, currentConfiguration.environment);
+			smcConnector.verifyRefinement();
+			for (AdaptationOption option : options) {
+				if (option.isVerified) {
+					verifiedOptions.add(option);
+				}
+			}
+		}
+		amountOfRefinedOptions += grid.getRefinedCount();
+	}
+
 	/**
 	 * Sets the distributions for the links of motes with 2 parents to 0-100 respectively.
 	 * @param newConfiguration the adaptation option which should be adjusted
@@ -206,65 +331,19 @@ public class FeedbackLoop {
 	}
 
 	void composeAdaptationOptions(AdaptationOption newConfiguration) {
-		// Clear the previous list of adaptation options
-		currentAdaptationOptions.clear();
-		List<Mote> moteOptions = new LinkedList<>();
-
 		initializeMoteDistributions(newConfiguration);
 
-		int initialValue = 0;
-		for (Mote mote : newConfiguration.system.motes.values()) {
-			// Search for the motes with 2 parents
-			if (mote.getLinks().size() == 2) {
-				mote = mote.getCopy();
-				moteOptions.clear();
-
-				// iterate over all the possible distribution options
-				for (int i = initialValue; i <= Math.ceil(100 / (double) DISTRIBUTION_GAP); i++) {
-					int distributionValue = Math.min(i * DISTRIBUTION_GAP, 100);
-					mote.getLink(0).setDistribution(distributionValue);
-					mote.getLink(1).setDistribution(100-distributionValue);
-					moteOptions.add(mote.getCopy());
-				}
-				initialValue = 1;
-
-				// add the new option to the global (feedbackloop object) adaption options for the mote
-				saveAdaptationOptions(newConfiguration, moteOptions, mote.getMoteId());
-			}
-
-		}
-
-		// Update the indices and verification status of the adaptation options
-		for (int i = 0; i < currentAdaptationOptions.size(); i++) {
-			currentAdaptationOptions.get(i).overallIndex = i;
-			currentAdaptationOptions.get(i).isVerified = false;
-		}
+		// The options are only materialized when they are used (all of them are unverified)
+		// The adaptive grid starts from the coarse grid, which is refined once it has been verified
+		currentAdaptationOptions = new AdaptationSpace(newConfiguration, adaptiveGrid ? ADAPTIVE_COARSE_GAP : DISTRIBUTION_GAP);
 	}
 
-	private void saveAdaptationOptions(AdaptationOption firstConfiguration, List<Mote> moteOptions, int moteId) {
-		AdaptationOption newAdaptationOption;
-
-		if (currentAdaptationOptions.isEmpty()) {
-			// for the new options, add them to the global options
-			for (int j = 0; j < moteOptions.size(); j++) {
-				newAdaptationOption = firstConfiguration.getCopy();
-				newAdaptationOption.system.motes.put(moteId, moteOptions.get(j));
-
-				currentAdaptationOptions.add(newAdaptationOption);
-			}
-
-		} else {
-			int size = currentAdaptationOptions.size();
-			
-			for (int i = 0; i < size; i++) {
-				for (int j = 0; j < moteOptions.size(); j++) {
-					newAdaptationOption = currentAdaptationOptions.get(i).getCopy();
-					newAdaptationOption.system.motes.put(moteId, moteOptions.get(j));
-					currentAdaptationOptions.add(newAdaptationOption);
-				}
-			}
-
-		}
+	/**
+	 * @return the adaptation option which keeps the distributions of the links closest to the current configuration,
+	 *   so falling back on it changes the routing of the network as little as possible.
+	 */
+	AdaptationOption findFailsafeOption() {
+		return currentAdaptationOptions.getClosestOption(currentConfiguration.system);
 	}
 
 
@@ -398,19 +477,18 @@ public class FeedbackLoop {
 		for (int i = 0; i < verifiedOptions.size(); i++) {
 
 			AdaptationOption option = verifiedOptions.get(i);
-			Goal pl = goals.getPacketLossGoal();
 			TaskType type = ConfigLoader.getInstance().getTaskType();
 			if (type.equals(TaskType.PLLAMULTICLASS) || type.equals(TaskType.PLLAMULTIREGR)) {
 				Goal la = goals.getLatencyGoal();
 
 				if (la.evaluate(option.verificationResults.latency) 
-						&& pl.evaluate(option.verificationResults.packetLoss)
+						&& goals.meetsPacketLossGoal(option.verificationResults)
 						&& goals.optimizeGoalEnergyConsumption(bestAdaptationOption, option)) {
 					bestAdaptationOption = option;
 				}
 
 			} else {
-				if (pl.evaluate(option.verificationResults.packetLoss)
+				if (goals.meetsPacketLossGoal(option.verificationResults)
 						&& goals.optimizeGoalEnergyConsumption(bestAdaptationOption, option)) {
 					bestAdaptationOption = option;
 				}
@@ -427,6 +505,12 @@ public class FeedbackLoop {
 			}
 		}
 
+		// If no option could be verified in time (the verifications were cancelled at the deadline),
+		// fall back on the option closest to the current configuration
+		if (bestAdaptationOption == null) {
+			bestAdaptationOption = findFailsafeOption();
+		}
+
 		// Go through all links and construct the steps that have to be made to change to the best adaptation option
 		Link newLink, oldLink;
 		for (Mote mote : bestAdaptationOption.system.motes.values()) {
@@ -30,7 +30,38 @@ public class Goals {
 		return getGoal("latency");
 	}
 
-	private Goal getGoal(String quality) {
+	public boolean hasGoal(String quality) {
+		return goals.stream().anyMatch(g -> g.getTarget().equals(quality));
+	}
+
+	/**
+	 * @return true if the goal is met by the verified qualities.
+	 */
+	public boolean meetsGoal(Goal goal, Qualities qualities) {
+		if (goal.getTarget().equals("packetLoss")) {
+			return meetsPacketLossGoal(qualities);
+		}
+		switch (goal.getTarget()) {
+			case "latency":
+				return goal.evaluate(qualities.latency);
+			case "energyConsumption":
+				return goal.evaluate(qualities.energyConsumption);
+			default:
+				throw new RuntimeException(String.format("Unknown quality: %s", goal.getTarget()));
+		}
+	}
+
+	/**
+	 * @return true if the packet loss goal is met, decided by the hypothesis test if the packet loss was not estimated.
+	 */
+	public boolean meetsPacketLossGoal(Qualities qualities) {
+		if (qualities.packetLossGoalMet != null) {
+			return qualities.packetLossGoalMet;
+		}
+		return getPacketLossGoal().evaluate(qualities.packetLoss);
+	}
+
+	public Goal getGoal(String quality) {
 		Optional<Goal> goal = goals.stream().filter(g -> g.getTarget().equals(quality)).findFirst();
 
 		if (goal.isPresent()) {
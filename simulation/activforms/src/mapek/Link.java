@@ -6,6 +6,15 @@ public class Link {
 	int power;
 	int distribution;
 
+	public Link() {}
+
+	public Link(int source, int destination, int power, int distribution) {
+		this.source = source;
+		this.destination = destination;
+		this.power = power;
+		this.distribution = distribution;
+	}
+
 	public int getSource() {
 		return source;
 	}
@@ -34,8 +43,8 @@ public class Link {
 		Link link = new Link();
 		link.source = this.source;
 		link.destination = this.destination;
-		link.power = this.power;
-		link.distribution = this.distribution;
+		link.power = getPower();
+		link.distribution = getDistribution();
 		return link;
 	}
 }
@@ -1,8 +1,8 @@
 package mapek;
 
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.google.gson.Gson;
 
@@ -11,18 +11,26 @@ import com.google.gson.Gson;
 // which in turn contain their own properties.
 public class ManagedSystem {
 
-	public HashMap<Integer, Mote> motes = new LinkedHashMap<Integer, Mote>();
+	public Map<Integer, Mote> motes;
 
 	public ManagedSystem() {
-
+		this(new LinkedHashMap<Integer, Mote>());
 	}
 
 	public ManagedSystem(List<Mote> motes) {
+		this();
 		for (Mote mote : motes) {
 			this.motes.put(mote.getMoteId(), mote);
 		}
 	}
 
+	/**
+	 * @param motes the motes keyed on their id, in the order of the system.
+	 */
+	ManagedSystem(Map<Integer, Mote> motes) {
+		this.motes = motes;
+	}
+
 	public void setMote(int moteId, Mote mote) {
 		motes.put(moteId, mote);
 	}
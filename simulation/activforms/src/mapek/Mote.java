@@ -11,6 +11,15 @@ public class Mote {
 
 	List<Link> links = new LinkedList<>();
 
+	public Mote() {}
+
+	public Mote(int moteId, double energyLevel, int load, int queueSize) {
+		this.moteId = moteId;
+		this.energyLevel = energyLevel;
+		this.load = load;
+		this.queueSize = queueSize;
+	}
+
 	public int getMoteId() {
 		return moteId;
 	}
@@ -27,6 +36,14 @@ public class Mote {
 		return energyLevel;
 	}
 
+	public int getLoad() {
+		return load;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
 	public Mote getCopy() {
 		Mote mote = new Mote();
 		mote.moteId = this.moteId;
@@ -42,12 +59,21 @@ public class Mote {
 
 	public String getModelString() {
 		StringBuilder string = new StringBuilder();
+		appendModelString(string);
+		return string.toString();
+	}
+
+	/**
+	 * Appends the representation of the mote in the quality models to the given string.
+	 */
+	public void appendModelString(StringBuilder string) {
 		string.append("\n{");
-		
-		string.append(String.format("%d, %d, 11744, %d, %d,{", moteId, load, links.size(), queueSize));
+		string.append(moteId).append(", ").append(load).append(", 11744, ")
+			.append(links.size()).append(", ").append(queueSize).append(",{");
+
 		for (Link link : links) {
-			string.append(
-					String.format("{%d, %d, %d, %d},", link.source, link.destination, link.power, link.distribution));
+			string.append('{').append(link.getSource()).append(", ").append(link.getDestination()).append(", ")
+				.append(link.getPower()).append(", ").append(link.getDistribution()).append("},");
 		}
 		if (links.size() == 1) {
 			// add empty link
@@ -57,6 +83,5 @@ public class Mote {
 		}
 
 		string.append("}}");
-		return string.toString();
 	}
 }
@@ -4,12 +4,15 @@ public class Qualities {
 	public double packetLoss;
 	public double energyConsumption;
 	public double latency;
+	// Outcome of the hypothesis test against the packet loss goal (null if the packet loss was estimated)
+	public Boolean packetLossGoalMet = null;
 
 	public Qualities getCopy() {
 		Qualities qualities = new Qualities();
 		qualities.packetLoss = this.packetLoss;
 		qualities.energyConsumption = this.energyConsumption;
-		qualities.latency = this.energyConsumption;
+		qualities.latency = this.latency;
+		qualities.packetLossGoalMet = this.packetLossGoalMet;
 		return qualities;
 	}
 }
@@ -0,0 +1,102 @@
+package mapek;
+
+import java.util.Arrays;
+
+/**
+ * The part of a managed system which is the same for all the adaptation options of a cycle: the motes (their id,
+ * energy level, load and queue) and their links (source and destination), in the order of the system.
+ * The links of all the motes are numbered consecutively, the options only keep the power and distribution of each link.
+ */
+final class Topology {
+
+	final int[] moteIds;
+	final double[] energyLevels;
+	final int[] loads;
+	final int[] queueSizes;
+	// The links of the mote at index i are numbered linkStart[i] up to linkStart[i + 1]
+	final int[] linkStart;
+	final int[] sources;
+	final int[] destinations;
+
+	// The index of the mote with a given id (-1 if there is no such mote)
+	private final int[] moteIndices;
+
+	Topology(ManagedSystem system) {
+		int amtMotes = system.motes.size();
+		moteIds = new int[amtMotes];
+		energyLevels = new double[amtMotes];
+		loads = new int[amtMotes];
+		queueSizes = new int[amtMotes];
+		linkStart = new int[amtMotes + 1];
+
+		int amtLinks = system.motes.values().stream().mapToInt(mote -> mote.getLinks().size()).sum();
+		sources = new int[amtLinks];
+		destinations = new int[amtLinks];
+
+		int i = 0, link = 0, maxId = 0;
+		for (Mote mote : system.motes.values()) {
+			moteIds[i] = mote.getMoteId();
+			energyLevels[i] = mote.getEnergyLevel();
+			loads[i] = mote.getLoad();
+			queueSizes[i] = mote.getQueueSize();
+			linkStart[i] = link;
+			for (Link l : mote.getLinks()) {
+				sources[link] = l.getSource();
+				destinations[link] = l.getDestination();
+				link++;
+			}
+			maxId = Math.max(maxId, mote.getMoteId());
+			i++;
+		}
+		linkStart[amtMotes] = link;
+
+		moteIndices = new int[maxId + 1];
+		Arrays.fill(moteIndices, -1);
+		for (i = 0; i < amtMotes; i++) {
+			moteIndices[moteIds[i]] = i;
+		}
+	}
+
+	/**
+	 * @return the index of the mote with the given id, or -1 if there is no such mote.
+	 */
+	int indexOf(int moteId) {
+		return moteId >= 0 && moteId < moteIndices.length ? moteIndices[moteId] : -1;
+	}
+
+	int getMoteCount() {
+		return moteIds.length;
+	}
+
+	int getLinkCount() {
+		return sources.length;
+	}
+
+	/**
+	 * @return the power settings of the links of the system, which has to have this topology.
+	 */
+	short[] getPowers(ManagedSystem system) {
+		short[] powers = new short[getLinkCount()];
+		int link = 0;
+		for (Mote mote : system.motes.values()) {
+			for (Link l : mote.getLinks()) {
+				powers[link++] = (short) l.getPower();
+			}
+		}
+		return powers;
+	}
+
+	/**
+	 * @return the distributions of the links of the system, which has to have this topology.
+	 */
+	byte[] getDistributions(ManagedSystem system) {
+		byte[] distributions = new byte[getLinkCount()];
+		int link = 0;
+		for (Mote mote : system.motes.values()) {
+			for (Link l : mote.getLinks()) {
+				distributions[link++] = (byte) l.getDistribution();
+			}
+		}
+		return distributions;
+	}
+}
@@ -0,0 +1,115 @@
+package smc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mapek.AdaptationOption;
+import mapek.Environment;
+import mapek.Goal;
+import util.ConfigLoader;
+
+/**
+ * Drops the adaptation options which can not meet the goals before they are verified or predicted, based on bounds
+ * of their qualities which follow from the SNR of the links and the routing of the option alone:
+ *  - packet loss: the packet loss of the quality model, computed exactly by the {@link PacketLossEvaluator},
+ *    widened by a margin for the estimation error of the verifier (an option which routes all of its traffic over a
+ *    link with an SNR of -20 or less loses every packet)
+ *  - other qualities are not bounded: the latency model measures the share of the packets which are still queued at
+ *    the end of a period, which follows from the contention for the send slots over the periods rather than from the
+ *    SNR or the hops of the routing, so no lower bound above 0 can be derived (latency goals never prune an option)
+ * An option is dropped if no value within the bounds of a quality meets its goal. If that holds for all the options,
+ * none of them is dropped (the planner then falls back on the option with the lowest energy consumption).
+ */
+public class BoundPruning {
+
+	private final PacketLossEvaluator packetLossEvaluator = new PacketLossEvaluator();
+	private final double packetLossMargin;
+
+	private long boundedOptions = 0;
+	private long prunedOptions = 0;
+
+	public BoundPruning() {
+		packetLossMargin = Double.parseDouble(
+			ConfigLoader.getInstance().getProperty("boundPruning.packetLossMargin", "2").trim());
+	}
+
+	/**
+	 * @param goals the goals the planner selects the options on.
+	 * @return the options which may meet all the goals, in list order (the given list if none of them may).
+	 */
+	public List<AdaptationOption> prune(List<AdaptationOption> options, Environment environment, List<Goal> goals) {
+		boolean[] pruned = new boolean[options.size()];
+		for (Goal goal : goals) {
+			double[][] bounds = getBounds(goal.getTarget(), options, environment);
+			if (bounds == null) {
+				continue;
+			}
+			for (int i = 0; i < options.size(); i++) {
+				pruned[i] |= cannotMeet(goal, bounds[0][i], bounds[1][i]);
+			}
+		}
+
+		List<AdaptationOption> candidates = new ArrayList<>();
+		for (int i = 0; i < options.size(); i++) {
+			if (!pruned[i]) {
+				candidates.add(options.get(i));
+			}
+		}
+
+		synchronized (this) {
+			boundedOptions += options.size();
+			if (candidates.isEmpty()) {
+				return options;
+			}
+			prunedOptions += options.size() - candidates.size();
+		}
+		return candidates;
+	}
+
+	/**
+	 * @return the lower (index 0) and upper (index 1) bound of the quality of every option, or null if the quality
+	 *   is not bounded.
+	 */
+	double[][] getBounds(String quality, List<AdaptationOption> options, Environment environment) {
+		double[][] bounds = new double[2][options.size()];
+		switch (quality) {
+			case "packetLoss":
+				double[] packetLoss = packetLossEvaluator.evaluate(options, environment);
+				for (int i = 0; i < options.size(); i++) {
+					bounds[0][i] = Math.max(0, packetLoss[i] - packetLossMargin);
+					bounds[1][i] = Math.min(100, packetLoss[i] + packetLossMargin);
+				}
+				return bounds;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * @return true if none of the values between the bounds (inclusive) meets the goal.
+	 */
+	static boolean cannotMeet(Goal goal, double lower, double upper) {
+		double threshold = goal.getTresshold();
+		switch (goal.getOperator()) {
+			case "<":
+				return lower >= threshold;
+			case "<=":
+				return lower > threshold;
+			case ">":
+				return upper <= threshold;
+			case ">=":
+				return upper < threshold;
+			case "==":
+				return threshold < lower || threshold > upper;
+			case "!=":
+				return lower == threshold && upper == threshold;
+			default:
+				return false;
+		}
+	}
+
+	public synchronized void printStatistics() {
+		System.out.println(String.format("Bound pruning: %d of %d options pruned (%.1f%%)", prunedOptions,
+			boundedOptions, boundedOptions == 0 ? 0 : prunedOptions * 100.0 / boundedOptions));
+	}
+}
@@ -0,0 +1,144 @@
+package smc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import mapek.AdaptationOption;
+import mapek.Environment;
+import mapek.Link;
+import mapek.Mote;
+import mapek.TrafficProbability;
+
+/**
+ * Online model of the time it takes to verify a quality model for an adaptation option.
+ * The verification time of every quality model is fitted on a few features of the option with recursive least squares,
+ * with a forgetting factor so the fit follows changes of the environment (and of the load of the machine):
+ *  - a constant: launching the verifier and parsing the model
+ *  - the expected amount of hops a packet takes to the gateway: the length of a run of the packet loss model
+ *  - the total traffic probability of the motes: the amount of packets the simulation models handle
+ */
+public class CostModel {
+
+	static final int FEATURES = 3;
+	private static final double FORGETTING_FACTOR = 0.99;
+	// Initial uncertainty of the weights
+	private static final double INITIAL_COVARIANCE = 1000;
+
+	private final Map<String, Estimator> estimators = new ConcurrentHashMap<>();
+
+	/**
+	 * Adds an observed verification time of the given quality model to its fit.
+	 * @param model the name of the quality model (see {@link SMCModel#getName()}).
+	 */
+	public void observe(String model, double[] features, double millis) {
+		estimators.computeIfAbsent(model, key -> new Estimator()).update(features, millis);
+	}
+
+	/**
+	 * @return the predicted verification time (in ms) of the given quality model, or -1 if it has not been observed yet.
+	 */
+	public double predict(String model, double[] features) {
+		Estimator estimator = estimators.get(model);
+		return estimator == null ? -1 : estimator.predict(features);
+	}
+
+	/**
+	 * @return the features of the option in the given environment, see {@link CostModel}.
+	 */
+	public static double[] getFeatures(AdaptationOption option, Environment environment) {
+		double hops = 0, traffic = 0;
+		Map<Integer, Double> motesHops = new HashMap<>();
+		for (TrafficProbability load : environment.motesLoad) {
+			double probability = load.load / 100;
+			if (option.system.getMote(load.moteId) != null) {
+				hops += probability * getHops(option, load.moteId, motesHops);
+			}
+			traffic += probability;
+		}
+		return new double[] { 1, traffic == 0 ? 0 : hops / traffic, traffic };
+	}
+
+	/**
+	 * @return the expected amount of hops from the given mote to the gateway (nodes which are not a mote).
+	 */
+	private static double getHops(AdaptationOption option, int moteId, Map<Integer, Double> motesHops) {
+		Mote mote = option.system.getMote(moteId);
+		if (mote == null) {
+			return 0;
+		}
+		Double known = motesHops.get(moteId);
+		if (known != null) {
+			return known;
+		}
+		// Guards against routing cycles, a mote in a cycle counts as a single hop
+		motesHops.put(moteId, 1.0);
+
+		double distribution = 0, hops = 0;
+		for (Link link : mote.getLinks()) {
+			distribution += link.getDistribution();
+			hops += link.getDistribution() * (1 + getHops(option, link.getDestination(), motesHops));
+		}
+		double result = distribution == 0 ? 1 : hops / distribution;
+		motesHops.put(moteId, result);
+		return result;
+	}
+
+	/**
+	 * Recursive least squares fit of the verification time of a single quality model.
+	 */
+	private static class Estimator {
+		private final double[] weights = new double[FEATURES];
+		private final double[][] covariance = new double[FEATURES][FEATURES];
+		private double meanTime = 0;
+		private long observations = 0;
+
+		Estimator() {
+			for (int i = 0; i < FEATURES; i++) {
+				covariance[i][i] = INITIAL_COVARIANCE;
+			}
+		}
+
+		synchronized void update(double[] x, double y) {
+			double[] px = new double[FEATURES];
+			double xpx = 0;
+			for (int i = 0; i < FEATURES; i++) {
+				for (int j = 0; j < FEATURES; j++) {
+					px[i] += covariance[i][j] * x[j];
+				}
+				xpx += x[i] * px[i];
+			}
+
+			double error = y;
+			for (int i = 0; i < FEATURES; i++) {
+				error -= weights[i] * x[i];
+			}
+
+			double denominator = FORGETTING_FACTOR + xpx;
+			for (int i = 0; i < FEATURES; i++) {
+				weights[i] += px[i] / denominator * error;
+			}
+			// The covariance is symmetric, so x'P equals (Px)'
+			for (int i = 0; i < FEATURES; i++) {
+				for (int j = 0; j < FEATURES; j++) {
+					covariance[i][j] = (covariance[i][j] - px[i] * px[j] / denominator) / FORGETTING_FACTOR;
+				}
+			}
+
+			observations++;
+			meanTime += (y - meanTime) / observations;
+		}
+
+		synchronized double predict(double[] x) {
+			if (observations < FEATURES) {
+				// Too few observations to trust the fit
+				return meanTime;
+			}
+			double prediction = 0;
+			for (int i = 0; i < FEATURES; i++) {
+				prediction += weights[i] * x[i];
+			}
+			return Math.max(0, prediction);
+		}
+	}
+}
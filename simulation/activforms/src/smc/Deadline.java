@@ -0,0 +1,46 @@
+package smc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time after which verifications should no longer be running.
+ */
+public final class Deadline {
+
+	// A deadline which never expires
+	public static final Deadline NONE = new Deadline(0, false);
+
+	private final long expiry;
+	private final boolean bounded;
+
+	private Deadline(long expiry, boolean bounded) {
+		this.expiry = expiry;
+		this.bounded = bounded;
+	}
+
+	/**
+	 * @return a deadline which expires after the given duration (counted from now).
+	 */
+	public static Deadline after(long duration, TimeUnit unit) {
+		return new Deadline(System.nanoTime() + unit.toNanos(duration), true);
+	}
+
+	public boolean isBounded() {
+		return bounded;
+	}
+
+	public boolean hasExpired() {
+		// Compared through the difference, System.nanoTime may overflow
+		return bounded && System.nanoTime() - expiry >= 0;
+	}
+
+	/**
+	 * @return the time left before the deadline expires (0 once expired, Long.MAX_VALUE if unbounded).
+	 */
+	public long remaining(TimeUnit unit) {
+		if (!bounded) {
+			return Long.MAX_VALUE;
+		}
+		return unit.convert(Math.max(0, expiry - System.nanoTime()), TimeUnit.NANOSECONDS);
+	}
+}
@@ -0,0 +1,142 @@
+package smc;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import domain.DomainConstants;
+import mapek.AdaptationOption;
+import mapek.Environment;
+import mapek.Link;
+import mapek.Mote;
+import mapek.TrafficProbability;
+import util.ConfigLoader;
+
+/**
+ * Closed-form evaluation of the energy consumption model (EnergyConsumption.xml).
+ * The model consumes, in every period:
+ *  - for every packet sent over a link: SF time * power consumption rate of the power setting of the link
+ *  - for every receive window: the reception cost during all the slots of the window
+ * Motes take their turn in the topology order of the model, so packets are forwarded in the period they are sent.
+ * The evaluator propagates the expected amount of packets sent by each mote over the routing tree in that order:
+ * a mote sends its own packets (load * traffic probability) and the packets it received, up to the amount of
+ * slots; the first link gets its distribution of those packets, the last link the remaining ones.
+ * This is the expected value of the simulated average, except for the rounding of the distributions and for
+ * the packets which stay queued at the end of the simulation of congested motes.
+ */
+public class EnergyEvaluator implements QualityEvaluator {
+
+	private final int maxSlots;
+	// Turn order of the motes in the model (the gateway takes the last turn)
+	private final int[] topology;
+	private final int maxId;
+	// Energy of the receive windows in a period, which does not depend on the option
+	private final double receptionEnergy;
+
+	public EnergyEvaluator(SMCModel model) {
+		this(model, Integer.parseInt(ConfigLoader.getInstance().getProperty(model.getKey() + ".receptionWindows", "0").trim()));
+	}
+
+	/**
+	 * @param model the energy consumption model, of which the constants and the topology are used.
+	 * @param receptionWindows the amount of receive windows the model accounts for in each period.
+	 */
+	public EnergyEvaluator(SMCModel model, int receptionWindows) {
+		String text = model.getModel();
+		maxSlots = getConstant(text, "MAX_SLOTS");
+
+		Matcher matcher = TOPOLOGY.matcher(text);
+		if (!matcher.find()) {
+			throw new RuntimeException(String.format("The topology is not defined in the %s model.", model.getKey()));
+		}
+		String[] ids = matcher.group(1).split(",");
+		topology = new int[ids.length];
+		int max = 0;
+		for (int i = 0; i < ids.length; i++) {
+			topology[i] = Integer.parseInt(ids[i].trim());
+			max = Math.max(max, topology[i]);
+		}
+		maxId = max;
+
+		if (receptionWindows <= 0) {
+			throw new RuntimeException(String.format("The amount of receive windows (%s.receptionWindows) is not configured.",
+				model.getKey()));
+		}
+		receptionEnergy = receptionWindows * maxSlots * DomainConstants.receptionTime * DomainConstants.receptionCost
+			/ DomainConstants.coulomb;
+	}
+
+	@Override
+	public double evaluate(AdaptationOption option, Environment environment) {
+		return evaluate(option, getTraffic(environment), new double[maxId + 1]);
+	}
+
+	@Override
+	public double[] evaluate(List<AdaptationOption> options, Environment environment) {
+		// The environment is the same for all options, so the traffic is only looked up once
+		double[] traffic = getTraffic(environment);
+		double[] received = new double[maxId + 1];
+		double[] results = new double[options.size()];
+		for (int i = 0; i < options.size(); i++) {
+			results[i] = evaluate(options.get(i), traffic, received);
+		}
+		return results;
+	}
+
+	/**
+	 * @param traffic the traffic probability (in percent) of each mote, indexed on the id of the mote.
+	 * @param received buffer for the expected amount of packets each mote receives, indexed on the id of the mote.
+	 */
+	private double evaluate(AdaptationOption option, double[] traffic, double[] received) {
+		Arrays.fill(received, 0);
+		double sendEnergy = 0;
+		double sfTime = DomainConstants.getSfTime(8);
+
+		for (int moteId : topology) {
+			Mote mote = option.system.getMote(moteId);
+			if (mote == null) {
+				// The gateway
+				continue;
+			}
+
+			double sent = Math.min(mote.getLoad() * traffic[moteId] / 100 + received[moteId], maxSlots);
+			double remaining = sent;
+			List<Link> links = mote.getLinks();
+			for (int i = 0; i < links.size(); i++) {
+				Link link = links.get(i);
+				double packets = i == links.size() - 1 ? remaining : sent * link.getDistribution() / 100;
+				remaining -= packets;
+
+				sendEnergy += packets * sfTime * DomainConstants.getPowerConsumptionRate(link.getPower())
+					/ DomainConstants.coulomb;
+				if (link.getDestination() <= maxId) {
+					received[link.getDestination()] += packets;
+				}
+			}
+		}
+		return sendEnergy + receptionEnergy;
+	}
+
+	private double[] getTraffic(Environment environment) {
+		double[] traffic = new double[maxId + 1];
+		for (TrafficProbability load : environment.motesLoad) {
+			if (load.moteId <= maxId) {
+				// Rounded the same way as the traffic is rendered in the model
+				traffic[load.moteId] = Math.round(load.load);
+			}
+		}
+		return traffic;
+	}
+
+	// int topology[d_id] = {8,10,13,...};
+	private static final Pattern TOPOLOGY = Pattern.compile("int\\s+topology\\s*\\[[^\\]]*\\]\\s*=\\s*\\{([^}]*)\\}");
+
+	private static int getConstant(String model, String name) {
+		Matcher matcher = Pattern.compile("int\\s+" + name + "\\s*=\\s*(\\d+)\\s*;").matcher(model);
+		if (!matcher.find()) {
+			throw new RuntimeException(String.format("Constant %s is not defined in the model.", name));
+		}
+		return Integer.parseInt(matcher.group(1));
+	}
+}
@@ -1,62 +1,176 @@
-
 package smc;
 
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringTokenizer;
 import java.util.concurrent.Callable;
 
+import util.ConfigLoader;
+
 public class ExecuteCommand implements Callable<String> {
 
-	private String command;
+	// Whether the output is read until the verifier reports its statistics (see VerifierTelemetry)
+	static final boolean STATISTICS = ConfigLoader.getInstance().isVerifierTelemetryEnabled();
+
+	private String[] command;
 	private SMCModel model;
-	private String result;
+	// Bytes which are written to the standard input of the process (null if nothing has to be written)
+	private byte[] input;
+	protected String result;
+	// Parses the output while it is produced (null if the verified formulas are unknown)
+	protected VerifierOutputParser parser;
+
+	// The running verifier process, which is destroyed when the verification is cancelled
+	private volatile Process process;
+	private volatile boolean cancelled = false;
+	// The exit status of the verifier, -1 if it did not exit by itself (it was stopped once its output was complete)
+	private volatile int exitValue = -1;
+
+	// Time it took to start the verifier process, and to run it until its output was read (ns)
+	protected long spawnTime = 0;
+	protected long wallTime = 0;
 
 	public ExecuteCommand(String cmd) {
-		this.command = cmd;
+		this(cmd, null);
 	}
 
 	public ExecuteCommand(String cmd, SMCModel model) {
-		this.command = cmd;
+		this(split(cmd), null, model);
+	}
+
+	public ExecuteCommand(String[] command, byte[] input, SMCModel model) {
+		this.command = command;
+		this.input = input;
 		this.model = model;
+		this.parser = model == null ? null : new VerifierOutputParser(model.getFormulas(), STATISTICS);
 	}
 
 	@Override
 	public String call() throws Exception {
-		StringBuffer output = new StringBuffer();
+		StringBuilder output = new StringBuilder();
 
-		Process p;
+		Process p = null;
+		long start = System.nanoTime();
 		try {
+			// The error output is merged, so neither of the pipes can fill up and block the verifier
+			p = new ProcessBuilder(command).redirectErrorStream(true).start();
+			spawnTime = System.nanoTime() - start;
+			process = p;
+			if (cancelled) {
+				// Cancelled while the process was being started
+				p.destroyForcibly();
+			}
+			try (OutputStream stdin = p.getOutputStream()) {
+				if (input != null) {
+					stdin.write(input);
+				}
+			}
 
-			p = Runtime.getRuntime().exec(command);
-			p.waitFor();
 			BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			BufferedReader errorReader = new BufferedReader(new InputStreamReader(p.getErrorStream()));
-
-			String line = "";
+			String line;
 			while ((line = reader.readLine()) != null) {
-				output.append(line + "\n");
-			}
+				output.append(line).append('\n');
 
-			if (output.length() == 0) {
-				while ((line = errorReader.readLine()) != null) {
-					output.append(line + "\n");
+				// Stop as soon as the values of all the formulas are known, the rest of the output is not needed
+				if (parser != null && parser.accept(line)) {
+					break;
 				}
 			}
+			if (line == null) {
+				exitValue = p.waitFor();
+			}
 
 		} catch (Exception e) {
-			e.printStackTrace(System.out);
+			if (!cancelled) {
+				e.printStackTrace(System.out);
+			}
+		} finally {
+			if (p != null && p.isAlive()) {
+				p.destroy();
+			}
+			wallTime = System.nanoTime() - start;
 		}
 
 		result = output.toString();
 		return result;
 	}
 
+	/**
+	 * Stops the verification: the verifier process is destroyed forcibly and the results remain incomplete.
+	 */
+	public void cancel() {
+		cancelled = true;
+		Process p = process;
+		if (p != null) {
+			p.destroyForcibly();
+		}
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return true if the verifier ran to its end by itself, rather than being destroyed or killed by a signal
+	 *   (a status of 128 or more).
+	 */
+	public boolean hasExited() {
+		return !cancelled && exitValue >= 0 && exitValue < 128;
+	}
+
+	/**
+	 * @return the results of the verified formulas, in the order of the formulas in the model.
+	 */
+	public List<VerificationResult> getResults() {
+		return parser == null ? Collections.emptyList() : parser.getResults();
+	}
+
+	/**
+	 * @return the result of the first formula of the model.
+	 */
+	public VerificationResult getFirstResult() {
+		if (getResults().isEmpty()) {
+			throw new RuntimeException(String.format("Couldn't parse the output of the verifier:\n%s", result));
+		}
+		return getResults().get(0);
+	}
+
 	public SMCModel getModel() {
 		return model;
 	}
 
+	/**
+	 * @return the time it took to start the verifier process (ns).
+	 */
+	public long getSpawnTime() {
+		return spawnTime;
+	}
+
+	/**
+	 * @return the time from the start of the verifier process until its output was read (ns).
+	 */
+	public long getWallTime() {
+		return wallTime;
+	}
+
+	/**
+	 * @return the raw output of the verifier.
+	 */
 	public String getResult() {
 		return result;
 	}
+
+	private static String[] split(String cmd) {
+		// Same tokenization as Runtime.exec(String)
+		StringTokenizer tokenizer = new StringTokenizer(cmd);
+		String[] tokens = new String[tokenizer.countTokens()];
+		for (int i = 0; tokenizer.hasMoreTokens(); i++) {
+			tokens[i] = tokenizer.nextToken();
+		}
+		return tokens;
+	}
 }
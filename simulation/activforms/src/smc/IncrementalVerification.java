@@ -0,0 +1,294 @@
+package smc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import mapek.AdaptationOption;
+import mapek.Environment;
+import mapek.Goal;
+import mapek.Link;
+import mapek.Mote;
+import mapek.Qualities;
+import mapek.SNR;
+import mapek.TrafficProbability;
+import util.ConfigLoader;
+
+/**
+ * Keeps the verified qualities of the options over the cycles, and only hands the options to the wrapped engine
+ * whose qualities may have changed:
+ *  - options which were not verified before (or longer than the maximum age ago)
+ *  - options of which the SNR of a link that carries traffic, or the traffic of a mote, moved beyond its tolerance
+ *    since they were verified
+ *  - a rolling slice of the other options (the ones verified longest ago), so every option is verified again regularly
+ * The other options reuse their previous qualities, their age tells how many cycles ago they were verified.
+ * Only the qualities which were all verified by the full models are kept: options which were only screened, or of
+ * which lazy verification skipped a quality (see {@link AdaptationOption#isEstimated}), are verified again next cycle.
+ * A cycle starts whenever the options are verified in a new environment.
+ */
+public class IncrementalVerification implements VerificationEngine {
+
+	private final VerificationEngine engine;
+
+	private final double snrTolerance;
+	private final double loadTolerance;
+	private final double refreshFraction;
+	private final int maxAge;
+
+	// The qualities of the options, keyed on their configuration (see getKey)
+	private final Map<String, Record> records = new HashMap<>();
+
+	private Environment currentEnvironment = null;
+	private int cycle = 0;
+
+	private long reusedOptions = 0;
+	private long newOptions = 0;
+	private long changedOptions = 0;
+	private long refreshedOptions = 0;
+
+	public IncrementalVerification(VerificationEngine engine) {
+		this.engine = engine;
+		ConfigLoader config = ConfigLoader.getInstance();
+		snrTolerance = Double.parseDouble(config.getProperty("incremental.snrTolerance", "1").trim());
+		loadTolerance = Double.parseDouble(config.getProperty("incremental.loadTolerance", "5").trim());
+		refreshFraction = Double.parseDouble(config.getProperty("incremental.refreshFraction", "0.1").trim());
+		maxAge = Integer.parseInt(config.getProperty("incremental.maxAge", "10").trim());
+	}
+
+	@Override
+	public long[] checkCAOs(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline) {
+		List<AdaptationOption> stale = reuse(adaptationOptions, environment);
+		return record(adaptationOptions, stale, environment, engine.checkCAOs(stale, environment, deadline));
+	}
+
+	/**
+	 * Hands the options which reuse their qualities to the listener first, then the ones which are verified again.
+	 */
+	@Override
+	public long[] checkCAOs(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline,
+			Predicate<AdaptationOption> listener) {
+		List<AdaptationOption> stale = reuse(adaptationOptions, environment);
+		for (AdaptationOption option : adaptationOptions) {
+			if (option.isVerified && !listener.test(option)) {
+				return new long[adaptationOptions.size()];
+			}
+		}
+		return record(adaptationOptions, stale, environment, engine.checkCAOs(stale, environment, deadline, listener));
+	}
+
+	@Override
+	public long[] checkCAOsWithScreening(List<AdaptationOption> adaptationOptions, Environment environment,
+			Deadline deadline, List<Goal> goals) {
+		List<AdaptationOption> stale = reuse(adaptationOptions, environment);
+		return record(adaptationOptions, stale, environment,
+			engine.checkCAOsWithScreening(stale, environment, deadline, goals));
+	}
+
+	@Override
+	public long[] checkCAOsLazily(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline,
+			List<Goal> goals) {
+		List<AdaptationOption> stale = reuse(adaptationOptions, environment);
+		return record(adaptationOptions, stale, environment, engine.checkCAOsLazily(stale, environment, deadline, goals));
+	}
+
+	/**
+	 * Sets the previous qualities of the options which do not have to be verified again (and marks them as verified).
+	 * @return the options which have to be verified, in list order.
+	 */
+	private synchronized List<AdaptationOption> reuse(List<AdaptationOption> adaptationOptions, Environment environment) {
+		if (environment != currentEnvironment) {
+			currentEnvironment = environment;
+			cycle++;
+			records.values().removeIf(record -> cycle - record.cycle > maxAge);
+		}
+
+		Set<AdaptationOption> stale = new HashSet<>();
+		List<AdaptationOption> reusable = new ArrayList<>();
+		Map<AdaptationOption, Record> found = new HashMap<>();
+		for (AdaptationOption option : adaptationOptions) {
+			Record record = records.get(getKey(option));
+			if (record == null) {
+				newOptions++;
+				stale.add(option);
+			} else if (record.cycle != cycle && hasChanged(option, record, environment)) {
+				changedOptions++;
+				stale.add(option);
+			} else {
+				reusable.add(option);
+				found.put(option, record);
+			}
+		}
+
+		// The options which were verified longest ago are verified again (options verified this cycle are never refreshed)
+		List<AdaptationOption> refresh = reusable.stream()
+			.filter(option -> found.get(option).cycle != cycle)
+			.sorted(Comparator.comparingInt(option -> found.get(option).cycle))
+			.limit((long) Math.ceil(reusable.size() * refreshFraction))
+			.collect(Collectors.toList());
+		refreshedOptions += refresh.size();
+		stale.addAll(refresh);
+
+		for (AdaptationOption option : reusable) {
+			if (!stale.contains(option)) {
+				Record record = found.get(option);
+				copy(record.qualities, option.verificationResults);
+				option.isVerified = true;
+				option.isEstimated = false;
+				option.verificationAge = cycle - record.cycle;
+				reusedOptions++;
+			}
+		}
+
+		// Keep the list order, the engines verify the options in that order
+		List<AdaptationOption> ordered = new ArrayList<>(stale.size());
+		for (AdaptationOption option : adaptationOptions) {
+			if (stale.contains(option)) {
+				ordered.add(option);
+			}
+		}
+		return ordered;
+	}
+
+	/**
+	 * Keeps the qualities of the options which were verified by the full models.
+	 * @return the verification times of all the options (0 for the options which reused their qualities).
+	 */
+	private synchronized long[] record(List<AdaptationOption> adaptationOptions, List<AdaptationOption> stale,
+			Environment environment, long[] staleTimes) {
+		Snapshot snapshot = new Snapshot(environment);
+		Map<AdaptationOption, Long> times = new HashMap<>();
+		for (int i = 0; i < stale.size(); i++) {
+			AdaptationOption option = stale.get(i);
+			times.put(option, staleTimes[i]);
+			if (option.isVerified && !option.isEstimated) {
+				Qualities qualities = new Qualities();
+				copy(option.verificationResults, qualities);
+				records.put(getKey(option), new Record(qualities, snapshot, cycle));
+				option.verificationAge = 0;
+			}
+		}
+
+		long[] verifTimes = new long[adaptationOptions.size()];
+		for (int i = 0; i < adaptationOptions.size(); i++) {
+			verifTimes[i] = times.getOrDefault(adaptationOptions.get(i), 0L);
+		}
+		return verifTimes;
+	}
+
+	/**
+	 * @return true if the SNR of a link the option sends traffic over, or the traffic of a mote, moved beyond its
+	 *   tolerance since the option was verified.
+	 */
+	private boolean hasChanged(AdaptationOption option, Record record, Environment environment) {
+		Snapshot then = record.snapshot;
+		if (then.snr.length != environment.linksSNR.size() || then.load.length != environment.motesLoad.size()) {
+			return true;
+		}
+		int i = 0;
+		for (TrafficProbability traffic : environment.motesLoad) {
+			if (Math.abs(traffic.load - then.load[i++]) > loadTolerance) {
+				return true;
+			}
+		}
+		i = 0;
+		for (SNR snr : environment.linksSNR) {
+			if (Math.abs(snr.SNR - then.snr[i++]) > snrTolerance && carriesTraffic(option, snr.source, snr.destination)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean carriesTraffic(AdaptationOption option, int source, int destination) {
+		Mote mote = option.system.motes.get(source);
+		if (mote != null) {
+			for (Link link : mote.getLinks()) {
+				if (link.getDestination() == destination) {
+					return link.getDistribution() > 0;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the configuration of the option: the load and queue of the motes, the distribution and power of their links.
+	 */
+	static String getKey(AdaptationOption option) {
+		StringBuilder key = new StringBuilder(256);
+		for (Mote mote : option.system.motes.values()) {
+			key.append(mote.getMoteId()).append('/').append(mote.getLoad()).append('/').append(mote.getQueueSize());
+			for (Link link : mote.getLinks()) {
+				key.append('[').append(link.getDestination()).append(',').append(link.getDistribution())
+					.append(',').append(link.getPower()).append(']');
+			}
+			key.append(';');
+		}
+		return key.toString();
+	}
+
+	private static void copy(Qualities from, Qualities to) {
+		to.packetLoss = from.packetLoss;
+		to.energyConsumption = from.energyConsumption;
+		to.latency = from.latency;
+		to.packetLossGoalMet = from.packetLossGoalMet;
+	}
+
+	@Override
+	public double predictVerificationTime(AdaptationOption option, Environment environment) {
+		return engine.predictVerificationTime(option, environment);
+	}
+
+	@Override
+	public long getSkippedVerifications() {
+		return engine.getSkippedVerifications();
+	}
+
+	@Override
+	public void printStatistics() {
+		engine.printStatistics();
+		synchronized (this) {
+			System.out.println(String.format("Incremental verification: %d options reused, verified %d new, "
+				+ "%d changed and %d refreshed options", reusedOptions, newOptions, changedOptions, refreshedOptions));
+		}
+	}
+
+	/**
+	 * @return the wrapped engine.
+	 */
+	public VerificationEngine getEngine() {
+		return engine;
+	}
+
+
+	/**
+	 * The SNR of the links and traffic of the motes at the time options were verified (in the order of the environment).
+	 */
+	private static class Snapshot {
+		final double[] snr;
+		final double[] load;
+
+		Snapshot(Environment environment) {
+			snr = environment.linksSNR.stream().mapToDouble(snr -> snr.SNR).toArray();
+			load = environment.motesLoad.stream().mapToDouble(load -> load.load).toArray();
+		}
+	}
+
+	private static class Record {
+		final Qualities qualities;
+		final Snapshot snapshot;
+		final int cycle;
+
+		Record(Qualities qualities, Snapshot snapshot, int cycle) {
+			this.qualities = qualities;
+			this.snapshot = snapshot;
+			this.cycle = cycle;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package smc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Growable byte buffer in which quality models are rendered.
+ * A buffer is meant to be reused (see {@link #reset()}) for all the options a thread verifies.
+ */
+public class ModelBuffer {
+
+	private byte[] bytes;
+	private int length = 0;
+
+	public ModelBuffer() {
+		this(16 * 1024);
+	}
+
+	public ModelBuffer(int capacity) {
+		bytes = new byte[capacity];
+	}
+
+	public void reset() {
+		length = 0;
+	}
+
+	public ModelBuffer append(byte[] data) {
+		ensureCapacity(length + data.length);
+		System.arraycopy(data, 0, bytes, length, data.length);
+		length += data.length;
+		return this;
+	}
+
+	/**
+	 * Appends the characters as single bytes (the rendered configuration only contains ASCII characters).
+	 */
+	public ModelBuffer append(CharSequence chars) {
+		int amount = chars.length();
+		ensureCapacity(length + amount);
+		for (int i = 0; i < amount; i++) {
+			bytes[length++] = (byte) chars.charAt(i);
+		}
+		return this;
+	}
+
+	public ModelBuffer append(char c) {
+		ensureCapacity(length + 1);
+		bytes[length++] = (byte) c;
+		return this;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > bytes.length) {
+			byte[] newBytes = new byte[Math.max(capacity, bytes.length * 2)];
+			System.arraycopy(bytes, 0, newBytes, 0, length);
+			bytes = newBytes;
+		}
+	}
+
+	/**
+	 * @return the backing array, only the first {@link #length()} bytes are part of the buffer.
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(bytes, 0, length);
+	}
+
+	@Override
+	public String toString() {
+		return new String(bytes, 0, length);
+	}
+}
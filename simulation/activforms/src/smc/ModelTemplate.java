@@ -0,0 +1,61 @@
+package smc;
+
+import java.nio.charset.Charset;
+
+/**
+ * A quality model which is split once in the part before the configuration, the configuration slot
+ * and the part after it. Rendering an adaptation option only copies the parts around the slot.
+ */
+public class ModelTemplate {
+
+	static final String START_TEXT = "//&lt;Configuration&gt;";
+	static final String END_TEXT = "//&lt;/Configuration&gt;";
+
+	private final SMCModel model;
+
+	// The text up to and including the start of the configuration slot
+	private final byte[] prefix;
+	// The text starting from the end of the configuration slot (null if the model has no slot)
+	private final byte[] suffix;
+
+	public ModelTemplate(SMCModel model) {
+		this.model = model;
+
+		String text = model.getModel();
+		String quality = model.getKey();
+
+		if (quality.equals("packetLoss") || quality.equals("energyConsumption") || quality.equals("latency")) {
+			int startIndex = text.indexOf(START_TEXT);
+			if (startIndex == -1) {
+				throw new RuntimeException("StartString:" + START_TEXT + " not found!");
+			}
+			startIndex += START_TEXT.length();
+			int endIndex = text.indexOf(END_TEXT);
+
+			prefix = text.substring(0, startIndex).getBytes(Charset.defaultCharset());
+			suffix = text.substring(endIndex).getBytes(Charset.defaultCharset());
+		} else {
+			// Models of other qualities are used as they are
+			prefix = text.getBytes(Charset.defaultCharset());
+			suffix = null;
+		}
+	}
+
+	public SMCModel getModel() {
+		return model;
+	}
+
+	/**
+	 * Renders the model with the given configuration in the buffer (the buffer is reset first).
+	 * @param buffer the buffer which will hold the rendered model.
+	 * @param cao the model string of the adaptation option.
+	 * @param env the model string of the environment.
+	 */
+	public void render(ModelBuffer buffer, CharSequence cao, byte[] env) {
+		buffer.reset();
+		buffer.append(prefix);
+		if (suffix != null) {
+			buffer.append(cao).append('\n').append(env).append(' ').append(suffix);
+		}
+	}
+}
@@ -1,5 +1,5 @@
 package smc;
 
 public enum ModelType {
-	SIMULATION, PROBABILITY;
+	SIMULATION, PROBABILITY, ANALYTICAL;
 }
@@ -0,0 +1,174 @@
+package smc;
+
+import java.util.Arrays;
+import java.util.List;
+
+import mapek.AdaptationOption;
+import mapek.Environment;
+import mapek.Link;
+import mapek.Mote;
+import mapek.SNR;
+import mapek.TrafficProbability;
+
+/**
+ * Numerical evaluation of the packet loss model (PacketLoss-SMC.xml).
+ * The model sends a single packet from a mote chosen proportionally to its traffic probability, every hop follows
+ * one of the links of the mote (weighted by their distributions) and loses the packet with the loss probability
+ * of the link: 0 for an SNR of at least 0, 1 for an SNR of -20 or less and -SNR / 20 in between.
+ * This is the loss of domain.Link.calculatePacketLoss(RunInfo) in the simulator (5% per dB below 0), which the model
+ * applies to the SNR rounded to an integer. A change to either formula has to be made in the model and here as well.
+ * The model checker estimates the probability that the packet is lost before it reaches the gateway.
+ * The evaluator computes that probability exactly, by propagating the probability that a packet which leaves a mote
+ * is lost from the gateway back to the leaves of the routing graph:
+ *   loss(gateway) = 0
+ *   loss(mote) = sum over the links of the mote: distribution * (linkLoss + (1 - linkLoss) * loss(destination))
+ */
+public class PacketLossEvaluator implements QualityEvaluator {
+
+	// The id of the gateway in the model
+	private static final int GATEWAY_ID = 1;
+
+	@Override
+	public double evaluate(AdaptationOption option, Environment environment) {
+		Inputs inputs = new Inputs(environment, option);
+		return evaluate(option, inputs);
+	}
+
+	@Override
+	public double[] evaluate(List<AdaptationOption> options, Environment environment) {
+		// The environment is the same for all options, so the loss of each link is only computed once
+		Inputs inputs = new Inputs(environment, options.isEmpty() ? null : options.get(0));
+		double[] results = new double[options.size()];
+		for (int i = 0; i < options.size(); i++) {
+			results[i] = evaluate(options.get(i), inputs);
+		}
+		return results;
+	}
+
+	/**
+	 * @return the packet loss of the option (a percentage, like the verified packet loss).
+	 */
+	private double evaluate(AdaptationOption option, Inputs inputs) {
+		inputs.reset();
+
+		double lost = 0, traffic = 0;
+		for (Mote mote : option.system.motes.values()) {
+			double weight = inputs.getTraffic(mote.getMoteId());
+			if (weight > 0) {
+				lost += weight * getLoss(option, mote.getMoteId(), inputs);
+				traffic += weight;
+			}
+		}
+		// Without traffic no packet is sent, so none can be lost
+		return traffic == 0 ? 0 : 100 * lost / traffic;
+	}
+
+	/**
+	 * @return the probability that a packet which leaves the given mote is lost before it reaches the gateway.
+	 */
+	private double getLoss(AdaptationOption option, int moteId, Inputs inputs) {
+		if (moteId == GATEWAY_ID) {
+			return 0;
+		}
+		if (inputs.state[moteId] == DONE) {
+			return inputs.loss[moteId];
+		}
+		if (inputs.state[moteId] == VISITING) {
+			throw new RuntimeException(String.format("The routing of mote %d contains a cycle.", moteId));
+		}
+		inputs.state[moteId] = VISITING;
+
+		Mote mote = option.system.getMote(moteId);
+		if (mote == null) {
+			throw new RuntimeException(String.format("Mote %d is not part of the managed system.", moteId));
+		}
+		double distribution = 0;
+		for (Link link : mote.getLinks()) {
+			distribution += link.getDistribution();
+		}
+
+		// A mote without distribution keeps the packet, so it is never lost
+		double loss = 0;
+		if (distribution > 0) {
+			for (Link link : mote.getLinks()) {
+				if (link.getDistribution() > 0) {
+					double linkLoss = inputs.getLinkLoss(link.getSource(), link.getDestination());
+					loss += link.getDistribution() / distribution
+						* (linkLoss + (1 - linkLoss) * getLoss(option, link.getDestination(), inputs));
+				}
+			}
+		}
+
+		inputs.loss[moteId] = loss;
+		inputs.state[moteId] = DONE;
+		return loss;
+	}
+
+	private static final byte UNVISITED = 0, VISITING = 1, DONE = 2;
+
+	/**
+	 * The loss of the links and the traffic of the motes (indexed on their ids), and the buffers of the propagation.
+	 */
+	private static class Inputs {
+		final double[][] linkLoss;
+		final double[] traffic;
+		final double[] loss;
+		final byte[] state;
+
+		Inputs(Environment environment, AdaptationOption option) {
+			int maxId = GATEWAY_ID;
+			for (SNR snr : environment.linksSNR) {
+				maxId = Math.max(maxId, Math.max(snr.source, snr.destination));
+			}
+			for (TrafficProbability load : environment.motesLoad) {
+				maxId = Math.max(maxId, load.moteId);
+			}
+			if (option != null) {
+				for (Mote mote : option.system.motes.values()) {
+					maxId = Math.max(maxId, mote.getMoteId());
+					for (Link link : mote.getLinks()) {
+						maxId = Math.max(maxId, link.getDestination());
+					}
+				}
+			}
+
+			linkLoss = new double[maxId + 1][maxId + 1];
+			for (SNR snr : environment.linksSNR) {
+				linkLoss[snr.source][snr.destination] = getLossProbability(Math.round(snr.SNR));
+			}
+			traffic = new double[maxId + 1];
+			for (TrafficProbability load : environment.motesLoad) {
+				// Rounded the same way as the traffic is rendered in the model
+				traffic[load.moteId] = Math.round(load.load);
+			}
+			loss = new double[maxId + 1];
+			state = new byte[maxId + 1];
+		}
+
+		void reset() {
+			Arrays.fill(state, UNVISITED);
+		}
+
+		double getTraffic(int moteId) {
+			return moteId < traffic.length ? traffic[moteId] : 0;
+		}
+
+		double getLinkLoss(int source, int destination) {
+			// Links without a known SNR do not lose packets in the model
+			return source < linkLoss.length && destination < linkLoss.length ? linkLoss[source][destination] : 0;
+		}
+	}
+
+	/**
+	 * @return the probability that a link with the given (rounded) SNR loses a packet, as computed by the model
+	 *   (see domain.Link.calculatePacketLoss in the simulator).
+	 */
+	static double getLossProbability(long snr) {
+		if (snr <= -20) {
+			return 1;
+		} else if (snr >= 0) {
+			return 0;
+		}
+		return (-snr * 100 / 20) / 100.0;
+	}
+}
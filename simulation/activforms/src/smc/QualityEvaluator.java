@@ -0,0 +1,43 @@
+package smc;
+
+import java.util.List;
+
+import mapek.AdaptationOption;
+import mapek.Environment;
+
+/**
+ * Computes a quality of adaptation options directly from the knowledge, instead of verifying its quality model.
+ * Used for the quality models with the analytical type (see the properties file).
+ */
+public interface QualityEvaluator {
+
+	/**
+	 * @return the quality of the option in the given environment, in the same unit as the verified quality.
+	 */
+	double evaluate(AdaptationOption option, Environment environment);
+
+	/**
+	 * @return the quality of each of the options in the given environment.
+	 */
+	default double[] evaluate(List<AdaptationOption> options, Environment environment) {
+		double[] results = new double[options.size()];
+		for (int i = 0; i < options.size(); i++) {
+			results[i] = evaluate(options.get(i), environment);
+		}
+		return results;
+	}
+
+	/**
+	 * @return the evaluator of the quality of the given model, which uses the constants of the model.
+	 */
+	static QualityEvaluator create(SMCModel model) {
+		switch (model.getKey()) {
+			case "energyConsumption":
+				return new EnergyEvaluator(model);
+			case "packetLoss":
+				return new PacketLossEvaluator();
+			default:
+				throw new RuntimeException(String.format("No analytical evaluator exists for quality %s.", model.getKey()));
+		}
+	}
+}
@@ -6,117 +6,111 @@ package smc;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import mapek.AdaptationOption;
+import mapek.Environment;
+import mapek.Goal;
+import mapek.Goals;
 import mapek.Qualities;
+import smc.runmodes.SMCConnector;
+import util.ConfigLoader;
 
-public class SMCChecker {
+public class SMCChecker implements VerificationEngine {
 
 
-	public static String command = Paths
-		.get(System.getProperty("user.dir"), "uppaal-verifyta", "verifyta -a %f -E %f -u %s").toString();
+	// Hands the rendered models to the verifier (as configured in the properties file)
+	private final VerifierLauncher launcher = VerifierLauncher.create();
 
+	// Buffers in which the models are rendered, reused for all the options a thread verifies
+	private static final ThreadLocal<ModelBuffer> buffers = ThreadLocal.withInitial(ModelBuffer::new);
+	private static final ThreadLocal<StringBuilder> optionStrings = ThreadLocal.withInitial(() -> new StringBuilder(4096));
 
 	SMCModelLoader modelLoader;
 
-	// The models used by Uppaal
-	List<SMCModel> models;
+	// The quality models, split around their configuration slot once
+	private final List<ModelTemplate> templates = new ArrayList<>();
 
 	public SMCChecker() {
 		modelLoader = new SMCModelLoader();
+		for (SMCModel model : modelLoader.loadModels()) {
+			templates.add(new ModelTemplate(useHypothesisTest(model) ? toHypothesisTest(model) : model));
+		}
+		store = openStore();
+		packetLossFilter = createPacketLossFilter();
+		packetLossFilterMargin = Double.parseDouble(ConfigLoader.getInstance().getProperty("packetLoss.preFilterMargin", "0"));
+		verificationPool = Executors.newFixedThreadPool(ConfigLoader.getInstance().getVerificationThreads(), runnable -> {
+			// Daemon threads, so an idle pool does not keep the simulation alive once all cycles are done
+			Thread thread = new Thread(runnable, "verification-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
 	}
 
 	ExecutorService cachedPool = Executors.newCachedThreadPool();
 
-	public List<SMCModel> getModels() {
-		return models;
-	}
+	// Bounded pool which verifies multiple adaptation options at the same time
+	ExecutorService verificationPool;
 
+	// Two-stage verification (only set up once it is used)
+	private Screening screening;
+	private final List<ModelTemplate> screeningTemplates = new ArrayList<>();
+	private final AtomicLong screenedOptions = new AtomicLong();
+	private final AtomicLong reverifiedOptions = new AtomicLong();
 
-	public static String getCommand(String modelPath, double alpha, double epsilon) {
-		String cmd = String.format(command, alpha, epsilon, modelPath);
-		return cmd;
-	}
+	// Model verifications which were skipped by lazy verifications
+	private final AtomicLong skippedVerifications = new AtomicLong();
 
-	static int getRuns(String string) {
-		if (string.contains(" runs)")) {
-			int end = string.indexOf(" runs)");
-			int start = string.lastIndexOf("(", end) + 1;
-			String runs = string.substring(start, end);
-			return Integer.parseInt(runs);
-		} else {
-			throw new RuntimeException("Couldn't parse probability");
-		}
-	}
+	// Results of previous verifications, one cache for each quality model
+	private final int cacheCapacity = ConfigLoader.getInstance().getVerificationCacheSize();
+	private final Map<String, VerificationCache> caches = new ConcurrentHashMap<>();
 
-	/*
-	 * This method parse the following line -- States explored : 147698 states
-	 */
-	final static String STATES_EXPLORED = "-- States explored : ";
+	// Results of the verifications of previous runs (null if no store is configured)
+	private final VerificationStore store;
 
-	static long getStatesExplored(String string) {
+	// Evaluators of the analytical quality models, keyed on the quality of the model
+	private final Map<String, QualityEvaluator> evaluators = new ConcurrentHashMap<>();
 
-		int start = string.indexOf(STATES_EXPLORED);
-		if (start != -1) {
-			start += STATES_EXPLORED.length();
-			int end = string.indexOf(" states", start);
-			String runs = string.substring(start, end);
-			return Long.parseLong(runs);
-		} else {
-			throw new RuntimeException("Couldn't parse states explored");
-		}
-	}
+	// Computes the packet loss of all options before they are verified (null if the pre-filter is disabled)
+	private final QualityEvaluator packetLossFilter;
+	private final double packetLossFilterMargin;
+	private final AtomicLong filteredOptions = new AtomicLong();
+	private final AtomicLong prefilteredOptions = new AtomicLong();
 
-	/*
-	 * This method parse the following line -- CPU user time used : 571 ms
-	 */
-	final static String CPU_TIME = "-- CPU user time used : ";
+	// Predicts the verification time of the models, fitted on the verifications of all cycles
+	private final CostModel costModel = new CostModel();
 
-	static long getCPUtime(String string) {
+	// Resource usage of the verifier (null if the telemetry is disabled)
+	private final VerifierTelemetry telemetry = createTelemetry();
 
-		int start = string.indexOf(CPU_TIME);
-		if (start != -1) {
-			start += CPU_TIME.length();
-			int end = string.indexOf(" ms", start);
-			String runs = string.substring(start, end);
-			return Long.parseLong(runs);
-		} else {
-			throw new RuntimeException("Couldn't parse CPU time");
-		}
+	public List<SMCModel> getModels() {
+		return modelLoader.loadModels();
 	}
 
-	/*
-	 * This method parse the following line -- Resident memory used : 6164 KiB
-	 */
-	final static String RESIDENT_MEM = "-- Resident memory used : ";
-
-	static long getResidentMem(String string) {
-
-		int start = string.indexOf(RESIDENT_MEM);
-		if (start != -1) {
-			start += RESIDENT_MEM.length();
-			int end = string.indexOf(" KiB", start);
-			String runs = string.substring(start, end);
-			return Long.parseLong(runs);
-		} else {
-			throw new RuntimeException("Couldn't parse resident memory");
-		}
-	}
 
-	static double getSimulatedValue(String string) {
-		// find the last pair
-		int startingIndex = string.lastIndexOf("(") + 1;
-		int endIndex = string.lastIndexOf(")");
-		String pair = string.substring(startingIndex, endIndex);
-		String[] splitPair = pair.split(",");
-		double value = Double.parseDouble(splitPair[1]);
-		return value;
+	public VerifierLauncher getLauncher() {
+		return launcher;
 	}
 
 	/**
@@ -168,103 +162,726 @@ public class SMCChecker {
 	 */
 	public void checkCAO(String adaptationOption, String environment, Qualities verificationResults) {
 
-		// loads and updates the models and their values specified in the SMCConfig.properties
-		setInitialData(adaptationOption, environment, verificationResults);
-
-		
-		// Add commands to verify all the different quality models
-		LinkedList<ExecuteCommand> commands = new LinkedList<ExecuteCommand>();
-		for (SMCModel model : models) {
-			String command = getCommand(model.getPath(), model.alpha, model.epsilon);
-			commands.add(new ExecuteCommand(command, model));
-		}
+		// updates the models with the values of the adaptation option and the environment
+		List<ExecuteCommand> commands = setInitialData(adaptationOption, environment.getBytes(Charset.defaultCharset()));
 
-		String[] values;
 		try {
 			cachedPool.invokeAll(commands);
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
 
-		// Collection of all the results from the model verifications
-		for (ExecuteCommand command : commands) {
-			// Get the part of the output from the command that contains the results of the verifier
-			values = command.getResult().split("Verifying formula ");
-
-			ModelType simType = command.getModel().getType();
-			String quality = command.getModel().getKey();
-
-			// Retrieve the results for the different qualities, dependent on the model type (simulation or probability)
-			switch (quality) {
-				case "latency":
-					// In case of latency, the returned value for simulation is still a percentage
-					verificationResults.latency = simType == ModelType.SIMULATION ?
-						getSimulatedValue(values[1]) * 100 : getProbability(values[1]) * 100;
-					break;
-				case "energyConsumption":
-					verificationResults.energyConsumption = simType == ModelType.SIMULATION ?
-						getSimulatedValue(values[1]) : getProbability(values[1]) * 100;
-					break;
-				case "packetLoss":
-					verificationResults.packetLoss = simType == ModelType.SIMULATION ?
-						getSimulatedValue(values[1]) : getProbability(values[1]) * 100;
-					break;
+		collectResults(commands, verificationResults);
+	}
+
+	/**
+	 * Verify a list of adaptation options concurrently on the bounded verification pool.
+	 * Every worker renders the models in its own buffer, so no two options share a rendered model.
+	 * Once the deadline expires, the options which are not verified yet are abandoned: running verifier
+	 * processes are destroyed and the options stay unverified (even if some of their qualities are known).
+	 * @param adaptationOptions the options to verify, they are handed to the workers in list order.
+	 * @param environment the environment of the system in this cycle.
+	 * @param deadline the moment at which the verification of the options has to be stopped.
+	 * @return the verification time (in ms) of each option, 0 for options which were not verified.
+	 */
+	@Override
+	public long[] checkCAOs(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline) {
+		return verifyCandidates(adaptationOptions, environment, deadline, null);
+	}
+
+	/**
+	 * Streams the verified options to the listener as soon as their results are published, see
+	 * {@link VerificationEngine#checkCAOs(List, Environment, Deadline, Predicate)}. Once the listener returns false,
+	 * the running verifier processes are destroyed and the remaining options are abandoned (as if the deadline expired).
+	 */
+	@Override
+	public long[] checkCAOs(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline,
+			Predicate<AdaptationOption> listener) {
+		return verifyCandidates(adaptationOptions, environment, deadline, listener);
+	}
+
+	/**
+	 * Verifies the options which pass the pre-filter (if enabled), see {@link #preFilter(List, Environment)}.
+	 */
+	private long[] verifyCandidates(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline,
+			Predicate<AdaptationOption> listener) {
+		List<AdaptationOption> candidates = preFilter(adaptationOptions, environment);
+		if (candidates == adaptationOptions) {
+			return checkCAOs(adaptationOptions, environment, deadline, templates, listener);
+		}
+
+		long[] times = checkCAOs(candidates, environment, deadline, templates, listener);
+		Map<AdaptationOption, Long> candidateTimes = new IdentityHashMap<>();
+		for (int i = 0; i < candidates.size(); i++) {
+			candidateTimes.put(candidates.get(i), times[i]);
+		}
+		long[] verifTimes = new long[adaptationOptions.size()];
+		for (int i = 0; i < adaptationOptions.size(); i++) {
+			verifTimes[i] = candidateTimes.getOrDefault(adaptationOptions.get(i), 0L);
+		}
+		return verifTimes;
+	}
+
+	/**
+	 * Computes the packet loss of the options numerically (see {@link PacketLossEvaluator}), the options which
+	 * violate the packet loss goal by more than the margin are not verified: they keep the computed packet loss
+	 * and stay unverified. If none of the options is left, all of them are verified (the planner then falls back
+	 * on the lowest energy consumption).
+	 * @return the options which have to be verified (the given list if the pre-filter is disabled or rejects all options).
+	 */
+	private List<AdaptationOption> preFilter(List<AdaptationOption> adaptationOptions, Environment environment) {
+		if (packetLossFilter == null || adaptationOptions.isEmpty()) {
+			return adaptationOptions;
+		}
+
+		Goal goal = Goals.getInstance().getPacketLossGoal();
+		double[] packetLoss = packetLossFilter.evaluate(adaptationOptions, environment);
+
+		List<AdaptationOption> candidates = new ArrayList<>();
+		boolean[] rejected = new boolean[adaptationOptions.size()];
+		for (int i = 0; i < adaptationOptions.size(); i++) {
+			if (goal.evaluate(packetLoss[i] - packetLossFilterMargin) || goal.evaluate(packetLoss[i] + packetLossFilterMargin)) {
+				candidates.add(adaptationOptions.get(i));
+			} else {
+				rejected[i] = true;
+			}
+		}
+
+		prefilteredOptions.addAndGet(adaptationOptions.size());
+		if (candidates.isEmpty()) {
+			return adaptationOptions;
+		}
+
+		for (int i = 0; i < adaptationOptions.size(); i++) {
+			if (rejected[i]) {
+				adaptationOptions.get(i).verificationResults.packetLoss = packetLoss[i];
 			}
 		}
+		filteredOptions.addAndGet(adaptationOptions.size() - candidates.size());
+		return candidates;
 	}
 
-	public void setInitialData(String cao, String env, Qualities verificationResults) {
-		// cao is the current adaption option
-		models = new LinkedList<>();
+	/**
+	 * @return the packet loss evaluator of the pre-filter, or null if it is disabled (or not needed because the
+	 *   packet loss is evaluated numerically anyway).
+	 */
+	private QualityEvaluator createPacketLossFilter() {
+		if (!ConfigLoader.getInstance().getProperty("packetLoss.preFilter", "false").trim().equalsIgnoreCase("true")
+				|| !Goals.getInstance().hasGoal("packetLoss")) {
+			return null;
+		}
+		for (ModelTemplate template : templates) {
+			SMCModel model = template.getModel();
+			if (model.getKey().equals("packetLoss") && model.getType() != ModelType.ANALYTICAL) {
+				return new PacketLossEvaluator();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Two-stage verification of a list of adaptation options, see {@link Screening}.
+	 * Options which are not verified again at full fidelity keep their screened qualities.
+	 * @param goals the goals the planner evaluates for each option.
+	 * @return the verification time (in ms) of each option, both stages combined.
+	 */
+	@Override
+	public long[] checkCAOsWithScreening(List<AdaptationOption> adaptationOptions, Environment environment,
+			Deadline deadline, List<Goal> goals) {
+		Screening screening = getScreening();
+		long[] verifTimes = checkCAOs(adaptationOptions, environment, deadline, screeningTemplates);
+		for (AdaptationOption option : adaptationOptions) {
+			option.isEstimated = option.isVerified;
+		}
+
+		Map<AdaptationOption, Integer> indices = new IdentityHashMap<>();
+		for (int i = 0; i < adaptationOptions.size(); i++) {
+			indices.put(adaptationOptions.get(i), i);
+		}
+
+		List<AdaptationOption> selected = screening.select(adaptationOptions, goals);
+		checkCAOsAgain(selected, environment, deadline, verifTimes, indices);
+
+		// If none of them meets the goals after all, the planner falls back on the lowest energy consumption
+		boolean goalsMet = selected.stream().anyMatch(option -> goals.stream().allMatch(
+			goal -> goal.evaluate(getQuality(option.verificationResults, goal.getTarget()))));
+		if (!goalsMet) {
+			List<AdaptationOption> fallback = screening.selectLowestEnergy(adaptationOptions);
+			fallback.removeAll(selected);
+			selected.addAll(fallback);
+			checkCAOsAgain(fallback, environment, deadline, verifTimes, indices);
+		}
+
+		screenedOptions.addAndGet(adaptationOptions.size());
+		reverifiedOptions.addAndGet(selected.size());
+		return verifTimes;
+	}
+
+	private void checkCAOsAgain(List<AdaptationOption> options, Environment environment, Deadline deadline,
+			long[] verifTimes, Map<AdaptationOption, Integer> indices) {
+		for (AdaptationOption option : options) {
+			option.isVerified = false;
+		}
+
+		long[] times = checkCAOs(options, environment, deadline, templates);
+
+		for (int i = 0; i < options.size(); i++) {
+			AdaptationOption option = options.get(i);
+			verifTimes[indices.get(option)] += times[i];
+			// Options which could not be verified again in time keep their screened qualities (if they were screened)
+			if (option.isVerified) {
+				option.isEstimated = false;
+			} else {
+				option.isVerified = option.isEstimated;
+			}
+		}
+	}
+
+	/**
+	 * Verifies the qualities of the options lazily: first the qualities which have a goal (in goal order),
+	 * then the energy consumption only for the options which meet all the goals. Qualities without a goal
+	 * (e.g. the latency for single goal tasks) are not verified at all.
+	 * If none of the options meets the goals, the planner falls back on the lowest energy consumption,
+	 * so then the energy consumption is verified for all options after all.
+	 * Options of which the energy consumption is not verified (in time) keep the qualities of the first stage, with an
+	 * infinite energy consumption so the planner never prefers them over an option of which it was verified.
+	 * @param goals the goals the planner evaluates for each option (their qualities are always verified).
+	 * @return the verification time (in ms) of each option, both stages combined.
+	 */
+	@Override
+	public long[] checkCAOsLazily(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline,
+			List<Goal> goals) {
+		List<ModelTemplate> goalModels = new ArrayList<>();
+		for (Goal goal : goals) {
+			for (ModelTemplate template : templates) {
+				if (template.getModel().getKey().equals(goal.getTarget())) {
+					goalModels.add(template);
+				}
+			}
+		}
+		List<ModelTemplate> energyModels = new ArrayList<>();
+		for (ModelTemplate template : templates) {
+			if (template.getModel().getKey().equals("energyConsumption") && !goalModels.contains(template)) {
+				energyModels.add(template);
+			}
+		}
+
+		// The qualities without a goal are never verified, so then no option gets all of its qualities verified
+		boolean complete = goalModels.size() + energyModels.size() == templates.size();
+		long[] verifTimes = checkCAOs(adaptationOptions, environment, deadline, goalModels);
+		for (AdaptationOption option : adaptationOptions) {
+			option.isEstimated = !complete || !energyModels.isEmpty();
+		}
+
+		Goals planningGoals = Goals.getInstance();
+		List<AdaptationOption> remaining = new ArrayList<>();
+		Map<AdaptationOption, Integer> indices = new IdentityHashMap<>();
+		for (int i = 0; i < adaptationOptions.size(); i++) {
+			AdaptationOption option = adaptationOptions.get(i);
+			indices.put(option, i);
+			if (option.isVerified && goals.stream().allMatch(goal -> planningGoals.meetsGoal(goal, option.verificationResults))) {
+				remaining.add(option);
+			}
+		}
+		if (remaining.isEmpty()) {
+			adaptationOptions.stream().filter(option -> option.isVerified).forEach(remaining::add);
+		}
+
+		if (!energyModels.isEmpty()) {
+			// The options keep the qualities of the first stage, until its energy consumption is verified an option
+			// is ranked last by the planner
+			for (AdaptationOption option : adaptationOptions) {
+				option.verificationResults.energyConsumption = Double.POSITIVE_INFINITY;
+			}
+			long[] times = checkCAOs(remaining, environment, deadline, energyModels);
+			for (int i = 0; i < remaining.size(); i++) {
+				AdaptationOption option = remaining.get(i);
+				verifTimes[indices.get(option)] += times[i];
+				option.isEstimated = !complete || Double.isInfinite(option.verificationResults.energyConsumption);
+			}
+		}
+
+		long verifications = (long) adaptationOptions.size() * goalModels.size() + (long) remaining.size() * energyModels.size();
+		skippedVerifications.addAndGet((long) adaptationOptions.size() * templates.size() - verifications);
+		return verifTimes;
+	}
+
+	/**
+	 * Predicts the verification time of the option from the verifications so far. Analytical models and models of
+	 * which the result is cached are not verified, so they do not count.
+	 * @return the predicted time (in ms), or -1 if a model which has to be verified has not been verified yet.
+	 */
+	@Override
+	public double predictVerificationTime(AdaptationOption option, Environment environment) {
+		double[] features = null;
+		double time = 0;
+		for (ModelTemplate template : templates) {
+			SMCModel model = template.getModel();
+			if (model.getType() == ModelType.ANALYTICAL) {
+				continue;
+			}
+			VerificationCache cache = getCache(model);
+			if (cache != null && cache.contains(VerificationCache.getKey(model.getKey(), option, environment))) {
+				continue;
+			}
+			if (features == null) {
+				features = CostModel.getFeatures(option, environment);
+			}
+			double prediction = costModel.predict(model.getName(), features);
+			if (prediction < 0) {
+				return -1;
+			}
+			time += prediction;
+		}
+		return time;
+	}
+
+	/**
+	 * @return the amount of model verifications which were not needed by the lazy verifications so far.
+	 */
+	@Override
+	public long getSkippedVerifications() {
+		return skippedVerifications.get();
+	}
+
+	/**
+	 * Reports the usage of the verification caches (so their size can be tuned), of the screening and of the pre-filter.
+	 */
+	@Override
+	public void printStatistics() {
+		caches.forEach((quality, cache) ->
+			System.out.println(String.format("Verification cache %s: %s", quality, cache)));
+
+		if (screenedOptions.get() > 0) {
+			System.out.println(String.format("Screening: %d options screened, %d verified again at full fidelity",
+				screenedOptions.get(), reverifiedOptions.get()));
+		}
+
+		if (prefilteredOptions.get() > 0) {
+			System.out.println(String.format("Packet loss pre-filter: %d of %d options not verified",
+				filteredOptions.get(), prefilteredOptions.get()));
+		}
+
+		if (telemetry != null) {
+			telemetry.printStatistics();
+			telemetry.export();
+		}
+	}
+
+	/**
+	 * @return the resource usage of the verifier, or null if the telemetry is disabled.
+	 */
+	public VerifierTelemetry getTelemetry() {
+		return telemetry;
+	}
+
+	private synchronized Screening getScreening() {
+		if (screening == null) {
+			screening = new Screening();
+			// Screening always estimates the qualities, the margins are defined on their values
+			for (SMCModel model : modelLoader.loadModels()) {
+				screeningTemplates.add(new ModelTemplate(screening.getScreeningModel(model)));
+			}
+		}
+		return screening;
+	}
+
+	/**
+	 * @return the amount of options which were screened and the amount of those that were verified again.
+	 */
+	public long[] getScreeningCounts() {
+		return new long[] { screenedOptions.get(), reverifiedOptions.get() };
+	}
+
+	/**
+	 * Verify a list of adaptation options with the given quality models, see {@link #checkCAOs(List, Environment, Deadline)}.
+	 */
+	long[] checkCAOs(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline,
+			List<ModelTemplate> qualityModels) {
+		return checkCAOs(adaptationOptions, environment, deadline, qualityModels, null);
+	}
+
+	/**
+	 * Verify a list of adaptation options with the given quality models, handing every verified option to the
+	 * listener (if not null) until it returns false.
+	 */
+	private long[] checkCAOs(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline,
+			List<ModelTemplate> qualityModels, Predicate<AdaptationOption> listener) {
+		// The environment is the same for all options in the cycle, only render it once
+		byte[] env = environment.toModelString().getBytes(Charset.defaultCharset());
+		long[] verifTimes = new long[adaptationOptions.size()];
+
+		// The verifications which are running, so they can be cancelled when the deadline expires
+		Set<ExecuteCommand> inFlight = ConcurrentHashMap.newKeySet();
+		// Results are only published while this holds, abandoned options stay untouched
+		AtomicBoolean open = new AtomicBoolean(true);
+
+		List<Callable<Void>> tasks = new ArrayList<>(adaptationOptions.size());
+		for (int i = 0; i < adaptationOptions.size(); i++) {
+			AdaptationOption option = adaptationOptions.get(i);
+			final int index = i;
+			long submitted = System.nanoTime();
+			tasks.add(() -> {
+				if (telemetry != null) {
+					telemetry.record(VerifierTelemetry.OPTION, VerifierTelemetry.Metric.QUEUE, (System.nanoTime() - submitted) / 1000);
+				}
+				verifyOption(option, qualityModels, environment, env, deadline, inFlight, open, listener, verifTimes, index);
+				return null;
+			});
+		}
+
+		List<Future<Void>> futures = new ArrayList<>(tasks.size());
+		for (Callable<Void> task : tasks) {
+			futures.add(verificationPool.submit(task));
+		}
+
 		try {
+			for (Future<Void> future : futures) {
+				future.get(deadline.remaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+			}
+		} catch (TimeoutException e) {
+			// The deadline expired, abandon the options that are still waiting or being verified
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Verification of an adaptation option failed.", e.getCause());
+		} finally {
+			synchronized (open) {
+				open.set(false);
+			}
+			for (Future<Void> future : futures) {
+				future.cancel(true);
+			}
+			for (ExecuteCommand command : inFlight) {
+				command.cancel();
+			}
+			if (telemetry != null) {
+				telemetry.export();
+			}
+		}
+
+		return verifTimes;
+	}
+
+	/**
+	 * Verifies the given option on the current thread. The results are only published (together with the verification
+	 * time, at the given index) if the verification is still open once the option is verified. The listener can close
+	 * the verification.
+	 */
+	private void verifyOption(AdaptationOption option, List<ModelTemplate> qualityModels, Environment environment,
+			byte[] env, Deadline deadline, Set<ExecuteCommand> inFlight, AtomicBoolean open,
+			Predicate<AdaptationOption> listener, long[] verifTimes, int index) throws Exception {
+		if (deadline.hasExpired() || !open.get() || Thread.currentThread().isInterrupted()) {
+			return;
+		}
+		long startTime = System.currentTimeMillis();
 
-			List<SMCModel> modelsLoadedFromProperties =  modelLoader.loadModels();
+		Map<String, Double> results = new HashMap<>();
+		// CPU time the verifier reported, all the models of the option combined (-1 if none of them was verified)
+		long cpuTime = -1;
 
-			for (SMCModel model : modelsLoadedFromProperties) {
+		ModelBuffer renderedModel = buffers.get();
+		StringBuilder cao = optionStrings.get();
+		boolean caoRendered = false;
+		double[] features = null;
 
-				// updates the model to include 
-				// some information about the adaption option and the environment (noise and load).
-				if (model.getKey().equals("packetLoss") || model.getKey().equals("energyConsumption") || model.getKey().equals("latency")) {
-					String updatedModel = changeCAO(model.getModel(), cao, env);
-					Files.write(Paths.get(model.getPath()), updatedModel.getBytes(Charset.defaultCharset()));
+		for (ModelTemplate template : qualityModels) {
+			SMCModel model = template.getModel();
+
+			if (model.getType() == ModelType.ANALYTICAL) {
+				// Evaluated in closed form, which is cheaper than a cache lookup
+				results.put(model.getQuality(), getEvaluator(model).evaluate(option, environment));
+				continue;
+			}
+
+			// Look up the qualities which have been verified before for the same inputs
+			VerificationCache cache = getCache(model);
+			String key = cache == null ? null : VerificationCache.getKey(model.getKey(), option, environment);
+			Double result = key == null ? null : cache.get(key);
+
+			if (result == null) {
+				if (!caoRendered) {
+					cao.setLength(0);
+					option.appendModelString(cao);
+					caoRendered = true;
+				}
+				template.render(renderedModel, cao, env);
+
+				// Results of earlier runs are looked up by the content of the rendered model
+				byte[] digest = store == null ? null : VerificationStore.digest(model, renderedModel);
+				result = digest == null ? null : store.get(digest);
+
+				if (result == null) {
+					if (features == null) {
+						features = CostModel.getFeatures(option, environment);
+					}
+					// The models of a single option are verified one after the other on this worker,
+					// this way the pool size bounds the amount of verifier processes that run at once
+					ExecuteCommand command = launcher.prepare(model, renderedModel);
+					long commandStart = System.nanoTime();
+					if (!run(command, deadline, open, inFlight)) {
+						return;
+					}
+					costModel.observe(model.getName(), features, (System.nanoTime() - commandStart) / 1e6);
+					result = getResult(model, command.getFirstResult());
+					if (telemetry != null) {
+						cpuTime = Math.max(cpuTime, 0) + telemetry.recordVerification(model.getName(),
+							command.getWallTime(), command.getSpawnTime(), command.getResults());
+					}
+
+					if (digest != null) {
+						store.put(digest, result);
+					}
+				}
+				if (key != null) {
+					cache.put(key, result);
+				}
+			}
+			results.put(model.getQuality(), result);
+		}
+
+		long verifTime = System.currentTimeMillis() - startTime;
+
+		synchronized (open) {
+			if (!open.get()) {
+				return;
+			}
+			for (Map.Entry<String, Double> result : results.entrySet()) {
+				setQuality(option.verificationResults, result.getKey(), result.getValue());
+			}
+			option.isVerified = true;
+			verifTimes[index] = verifTime;
+
+			if (telemetry != null) {
+				telemetry.record(VerifierTelemetry.OPTION, VerifierTelemetry.Metric.WALL, verifTime * 1000);
+				if (cpuTime >= 0) {
+					telemetry.record(VerifierTelemetry.OPTION, VerifierTelemetry.Metric.CPU, cpuTime);
 				}
-				
-				// add the updated form of the model to the models
-				models.add(model);
+			}
+
+			if (listener != null && !listener.test(option)) {
+				// No other option is needed, abandon the ones which are still being verified
+				open.set(false);
+				for (ExecuteCommand command : inFlight) {
+					command.cancel();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the command, unless the deadline has expired or the verification is closed (in flight commands are cancelled
+	 * when that happens).
+	 * @return true if the command ran to completion.
+	 */
+	private static boolean run(ExecuteCommand command, Deadline deadline, AtomicBoolean open, Set<ExecuteCommand> inFlight)
+			throws Exception {
+		inFlight.add(command);
+		try {
+			if (deadline.hasExpired() || !open.get() || Thread.currentThread().isInterrupted()) {
+				return false;
+			}
+			command.call();
+		} finally {
+			inFlight.remove(command);
+		}
+		return !command.isCancelled();
+	}
+
+	private void collectResults(List<ExecuteCommand> commands, Qualities verificationResults) {
+		// Collection of all the results from the model verifications
+		for (ExecuteCommand command : commands) {
+			setQuality(verificationResults, command.getModel().getQuality(), getResult(command.getModel(), command.getFirstResult()));
+		}
+	}
+
+	private double getResult(SMCModel model, VerificationResult result) {
+		String quality = model.getKey();
+
+		// Both simulated values and probabilities are percentages, except the simulated energy consumption
+		if (result.getKind() == VerificationResult.Kind.SIMULATION) {
+			return quality.equals("latency") ? result.getValue() * 100 : result.getValue();
+		}
+		return result.getValue() * 100;
+	}
+
+	static void setQuality(Qualities verificationResults, String quality, double value) {
+		switch (quality) {
+			case "latency":
+				verificationResults.latency = value;
+				break;
+			case "energyConsumption":
+				verificationResults.energyConsumption = value;
+				break;
+			case "packetLoss":
+				verificationResults.packetLoss = value;
+				break;
+			case "packetLossGoalMet":
+				verificationResults.packetLossGoalMet = value != 0;
+				break;
+		}
+	}
+
+	static double getQuality(Qualities verificationResults, String quality) {
+		switch (quality) {
+			case "latency":
+				return verificationResults.latency;
+			case "energyConsumption":
+				return verificationResults.energyConsumption;
+			case "packetLoss":
+				return verificationResults.packetLoss;
+			default:
+				throw new RuntimeException(String.format("Unknown quality: %s", quality));
+		}
+	}
+
+	/**
+	 * @return the result cache of the given quality model, or null if caching is disabled.
+	 */
+	private VerificationCache getCache(SMCModel model) {
+		if (cacheCapacity <= 0) {
+			return null;
+		}
+		return caches.computeIfAbsent(model.getName(), key -> new VerificationCache(cacheCapacity));
+	}
+
+	/**
+	 * @return the evaluator of the given analytical quality model.
+	 */
+	QualityEvaluator getEvaluator(SMCModel model) {
+		return evaluators.computeIfAbsent(model.getQuality(), quality -> QualityEvaluator.create(model));
+	}
+
+	/**
+	 * @return the result caches of the quality models, keyed on the name of the model (see {@link SMCModel#getName()}).
+	 */
+	public Map<String, VerificationCache> getCaches() {
+		return caches;
+	}
+
+	/**
+	 * Renders the quality models for the given adaptation option and hands them to the launcher.
+	 * @return the commands which verify the rendered models.
+	 */
+	List<ExecuteCommand> setInitialData(String cao, byte[] env) {
+		// cao is the current adaption option
+		List<ExecuteCommand> commands = new LinkedList<>();
+		ModelBuffer renderedModel = buffers.get();
+		try {
+			for (ModelTemplate template : templates) {
+				if (template.getModel().getType() == ModelType.ANALYTICAL) {
+					// Analytical models are evaluated on the knowledge, not on the rendered configuration
+					continue;
+				}
+				template.render(renderedModel, cao, env);
+				commands.add(launcher.prepare(template.getModel(), renderedModel));
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		return commands;
 	}
 
-	public static String setSimulations(String model, int simulations) {
-		String str = "simulate 1[";
-		if (model.contains(str)) {
-			int start = model.lastIndexOf(str) + str.length();
-			int end = model.indexOf("]", start);
-			String s = model.substring(start, end);
-			model = model.replace(s, "&lt;=" + simulations);
+	/**
+	 * @return the telemetry of the verifier, or null if it is disabled in the properties file.
+	 */
+	private static VerifierTelemetry createTelemetry() {
+		ConfigLoader config = ConfigLoader.getInstance();
+		if (!config.isVerifierTelemetryEnabled()) {
+			return null;
 		}
-		return model;
+		int window = Integer.parseInt(config.getProperty("verifierTelemetry.window", "1000").trim());
+		String export = config.getProperty("verifierTelemetry.export", "").trim();
+		return new VerifierTelemetry(window, export.isEmpty() ? null : Paths.get(System.getProperty("user.dir"), export));
 	}
 
-	static double getProbability(String string) {
-		String proability = getProbabilityBounds(string);
-		String[] strBounds = proability.split(",");
-		Double[] bounds = new Double[] { Double.parseDouble(strBounds[0]), Double.parseDouble(strBounds[1]) };
+	private static VerificationStore openStore() {
+		String storeLocation = ConfigLoader.getInstance().getVerificationStore();
+		if (storeLocation.isEmpty()) {
+			return null;
+		}
+
+		try {
+			VerificationStore store = new VerificationStore(Paths.get(System.getProperty("user.dir"), storeLocation));
+
+			// Runs which verified the same models at the same time leave duplicate records behind
+			if (store.getDuplicates() > store.getRecords() / 4) {
+				System.out.println(String.format("The verification store holds %d duplicate records, compact it with "
+					+ "smc.VerificationStore while no run uses it.", store.getDuplicates()));
+			}
+			return store;
+		} catch (IOException e) {
+			throw new RuntimeException(String.format("Could not open the verification store at %s", storeLocation), e);
+		}
+	}
 
-		double avg = ((bounds[0] + bounds[1]) / 2);
-		return avg;
+	public VerificationStore getStore() {
+		return store;
 	}
 
-	static String getProbabilityBounds(String string) {
-		if (string.contains("Pr(<> ...) in [")) {
-			int index = string.indexOf("Pr(<> ...) in [") + "Pr(<> ...) in [".length();
-			String proability = string.substring(index, string.indexOf("]", index));
+	/**
+	 * Hypothesis tests are only used for the packet loss when the outcome of its goal is all that is needed:
+	 * the planner and the classification learners, regression learners and stored datasets need its value.
+	 */
+	private static boolean useHypothesisTest(SMCModel model) {
+		ConfigLoader config = ConfigLoader.getInstance();
+		if (!config.getProperty(model.getKey() + ".hypothesisTest", "false").trim().equalsIgnoreCase("true")) {
+			return false;
+		}
 
-			return proability;
-		} else {
-			throw new RuntimeException("Couldn't parse probability");
+		SMCConnector.TaskType taskType = config.getTaskType();
+		boolean goalOnly = config.getRunMode() == SMCConnector.Mode.MACHINELEARNING
+			&& (taskType == SMCConnector.TaskType.CLASSIFICATION || taskType == SMCConnector.TaskType.PLLAMULTICLASS);
+		String operator = Goals.getInstance().hasGoal(model.getKey()) ?
+			Goals.getInstance().getGoal(model.getKey()).getOperator() : "";
+
+		if (!model.getKey().equals("packetLoss") || model.getType() != ModelType.PROBABILITY || !goalOnly
+				|| operator.equals("==") || operator.equals("!=") || operator.isEmpty()) {
+			System.out.println(String.format("The %s goal can not be verified with a hypothesis test in this run mode, "
+				+ "its value is estimated instead.", model.getKey()));
+			return false;
+		}
+		return true;
+	}
+
+	// Pr [&lt;=1](&lt;&gt;Network.PacketLoss), as the query is written in the model file
+	private static final Pattern PROBABILITY_QUERY = Pattern.compile("(<formula>\\s*Pr\\s*\\[[^\\]]*\\]\\s*\\(.*?\\))(\\s*</formula>)", Pattern.DOTALL);
+
+	/**
+	 * Rewrites the probability estimation of the model into a hypothesis test against the goal of its quality
+	 * (the qualities are percentages, the probabilities are not). The verifier stops sampling as soon as the
+	 * outcome is decided, which takes far less runs for options which are not close to the threshold.
+	 */
+	static SMCModel toHypothesisTest(SMCModel model) {
+		Goal goal = Goals.getInstance().getGoal(model.getKey());
+		String operator = goal.getOperator().startsWith("<") ? "&lt;=" : "&gt;=";
+		String test = String.format(Locale.ROOT, "$1 %s %s$2", operator, goal.getTresshold() / 100);
+
+		String text = PROBABILITY_QUERY.matcher(model.getModel()).replaceAll(test);
+		return model.getVariant(SMCModel.HYPOTHESIS_TEST, model.getEpsilon(), text);
+	}
+
+	// simulate 1[&lt;=30]{...}, as the query is written in the model file
+	private static final Pattern SIMULATE_QUERY = Pattern.compile("simulate\\s+(\\d+)\\s*\\[\\s*&lt;=\\s*(\\d+)\\s*\\]");
+
+	/**
+	 * Changes the amount of runs of the simulate queries in the model.
+	 */
+	public static String setSimulations(String model, int simulations) {
+		return SIMULATE_QUERY.matcher(model).replaceAll("simulate " + simulations + "[&lt;=$2]");
+	}
+
+	/**
+	 * Scales the time bound of the simulate queries in the model (the bound is at least 1).
+	 */
+	public static String scaleTimeBound(String model, double fraction) {
+		Matcher matcher = SIMULATE_QUERY.matcher(model);
+		StringBuffer scaled = new StringBuffer();
+		while (matcher.find()) {
+			long bound = Math.max(1, Math.round(Integer.parseInt(matcher.group(2)) * fraction));
+			matcher.appendReplacement(scaled, "simulate " + matcher.group(1) + "[&lt;=" + bound + "]");
 		}
+		matcher.appendTail(scaled);
+		return scaled.toString();
 	}
 }
@@ -1,5 +1,11 @@
 package smc;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 public class SMCModel {
 	String key;
 	String path;
@@ -8,6 +14,12 @@ public class SMCModel {
 	double alpha;
 	double epsilon;
 	String model;
+	List<String> formulas;
+	// Name of the settings this model is verified with, empty for the model as configured
+	String variant = "";
+
+	// Variant which tests the formula against the goal of the quality, instead of estimating it
+	public static final String HYPOTHESIS_TEST = "hypothesis test";
 
 	public SMCModel(String key, String path, ModelType type, int simulations, double alpha, double epsilon,
 			String model) {
@@ -18,6 +30,21 @@ public class SMCModel {
 		this.alpha = alpha;
 		this.epsilon = epsilon;
 		this.model = model;
+		this.formulas = parseFormulas(model);
+	}
+
+	private static final Pattern FORMULA = Pattern.compile("<formula>(.*?)</formula>", Pattern.DOTALL);
+
+	/**
+	 * @return the formulas of the queries in the model (unescaped), in the order they are verified.
+	 */
+	static List<String> parseFormulas(String model) {
+		List<String> formulas = new ArrayList<>();
+		Matcher matcher = FORMULA.matcher(model);
+		while (matcher.find()) {
+			formulas.add(matcher.group(1).replace("&lt;", "<").replace("&gt;", ">").replace("&amp;", "&").trim());
+		}
+		return Collections.unmodifiableList(formulas);
 	}
 
 	public String getKey() {
@@ -44,6 +71,37 @@ public class SMCModel {
 		return epsilon;
 	}
 
+	/**
+	 * @return a copy of this model, which is verified with the given epsilon and model text.
+	 */
+	public SMCModel getVariant(String variant, double epsilon, String model) {
+		SMCModel copy = new SMCModel(key, path, type, simulations, alpha, epsilon, model);
+		copy.variant = variant;
+		return copy;
+	}
+
+	public String getVariant() {
+		return variant;
+	}
+
+	/**
+	 * @return the key of the model, extended with the variant if it is not the model as configured.
+	 */
+	public String getName() {
+		return variant.isEmpty() ? key : String.format("%s (%s)", key, variant);
+	}
+
+	/**
+	 * @return the quality (see {@link SMCChecker#setQuality}) which is set with the result of this model.
+	 */
+	public String getQuality() {
+		return variant.equals(HYPOTHESIS_TEST) ? key + "GoalMet" : key;
+	}
+
+	public List<String> getFormulas() {
+		return formulas;
+	}
+
 	public String getModel() {
 		return model;
 	}
@@ -15,22 +15,19 @@ import util.ConfigLoader;
 public class SMCModelLoader {
 
 	List<SMCModel> models;
-	long lastModified;
 
 	public SMCModelLoader() {}
 
-	public List<SMCModel> loadModels() {
+	public synchronized List<SMCModel> loadModels() {
+		// The properties are only read once by the ConfigLoader, so the models only have to be loaded once as well
+		if (models != null) {
+			return models;
+		}
 
 		try {
 			File configFile = new File(ConfigLoader.configFileLocation);
 			if (!configFile.exists()) {
 				throw new RuntimeException("SMCConfig.properties file not found at following path: " + ConfigLoader.configFileLocation);
-			} else {
-				long lastModified = configFile.lastModified();
-				if (this.lastModified == lastModified) {
-					return models;
-				}
-				this.lastModified = lastModified;
 			}
 
 			models = new LinkedList<>();
@@ -72,6 +69,10 @@ public class SMCModelLoader {
 					alpha = configLoader.getProperty(key + ".alpha");
 					epsilon = configLoader.getProperty(key + ".epsilon");
 				}
+				else if (modelType.equalsIgnoreCase("analytical")) {
+					// Evaluated in closed form, only the constants of the model are used
+					type = ModelType.ANALYTICAL;
+				}
 
 				// read in the model from the filepath
 				model = new String(Files.readAllBytes(Paths.get(path)), Charset.defaultCharset());
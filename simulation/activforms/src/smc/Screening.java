@@ -0,0 +1,125 @@
+package smc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mapek.AdaptationOption;
+import mapek.Goal;
+import util.ConfigLoader;
+
+/**
+ * Settings and decisions of the two-stage verification: all adaptation options are first verified with cheap
+ * screening models, after which only the options which could still be chosen by the planner are verified
+ * again at full fidelity. Screened results are considered to be within a margin of the actual result:
+ *  - options which violate a goal by more than the margin can not be chosen
+ *  - options which meet all goals by more than the margin bound the best energy consumption
+ *  - all other options within the margin of that bound are verified again
+ */
+public class Screening {
+
+	private final double epsilon;
+	private final double horizon;
+
+	public Screening() {
+		ConfigLoader config = ConfigLoader.getInstance();
+		epsilon = Double.parseDouble(config.getProperty("screeningEpsilon", "0.05"));
+		horizon = Double.parseDouble(config.getProperty("screeningHorizon", "0.34"));
+	}
+
+	/**
+	 * @return the screening variant of the quality model: probabilities are estimated with a looser epsilon,
+	 *   simulations only cover a fraction of their time bound (analytical models are used as they are).
+	 */
+	public SMCModel getScreeningModel(SMCModel model) {
+		if (model.getType() == ModelType.ANALYTICAL) {
+			// Already cheap to evaluate
+			return model;
+		}
+		if (model.getType() == ModelType.PROBABILITY) {
+			return model.getVariant("screening", Math.max(epsilon, model.getEpsilon()), model.getModel());
+		}
+		return model.getVariant("screening", model.getEpsilon(), SMCChecker.scaleTimeBound(model.getModel(), horizon));
+	}
+
+	/**
+	 * @return the margin (in the unit of the quality) within which a screened result is uncertain.
+	 */
+	public double getMargin(String quality) {
+		return Double.parseDouble(ConfigLoader.getInstance().getProperty(quality + ".screeningMargin", "0"));
+	}
+
+	/**
+	 * Selects the screened options which have to be verified again at full fidelity.
+	 * @param options the screened options (options which were not verified are ignored).
+	 * @param goals the goals the planner uses to select the option with the lowest energy consumption.
+	 */
+	public List<AdaptationOption> select(List<AdaptationOption> options, List<Goal> goals) {
+		double energyMargin = getMargin("energyConsumption");
+
+		List<AdaptationOption> candidates = new ArrayList<>();
+		// Upper bound of the energy consumption of the best option which certainly meets the goals
+		double bestEnergy = Double.POSITIVE_INFINITY;
+
+		for (AdaptationOption option : options) {
+			if (!option.isVerified) {
+				continue;
+			}
+
+			boolean violated = false, uncertain = false;
+			for (Goal goal : goals) {
+				double value = SMCChecker.getQuality(option.verificationResults, goal.getTarget());
+				double margin = getMargin(goal.getTarget());
+				boolean lower = goal.evaluate(value - margin);
+				boolean upper = goal.evaluate(value + margin);
+
+				if (!lower && !upper) {
+					violated = true;
+				} else if (lower != upper) {
+					uncertain = true;
+				}
+			}
+
+			if (!violated) {
+				candidates.add(option);
+				if (!uncertain) {
+					bestEnergy = Math.min(bestEnergy, option.verificationResults.energyConsumption + energyMargin);
+				}
+			}
+		}
+
+		if (candidates.isEmpty()) {
+			// The planner falls back to the option with the lowest energy consumption
+			return selectLowestEnergy(options);
+		}
+
+		List<AdaptationOption> selected = new ArrayList<>();
+		for (AdaptationOption option : candidates) {
+			if (option.verificationResults.energyConsumption - energyMargin <= bestEnergy) {
+				selected.add(option);
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * @return the options which could have the lowest energy consumption of all options.
+	 */
+	public List<AdaptationOption> selectLowestEnergy(List<AdaptationOption> options) {
+		double energyMargin = getMargin("energyConsumption");
+
+		double lowestEnergy = Double.POSITIVE_INFINITY;
+		for (AdaptationOption option : options) {
+			if (option.isVerified) {
+				lowestEnergy = Math.min(lowestEnergy, option.verificationResults.energyConsumption + energyMargin);
+			}
+		}
+
+		List<AdaptationOption> selected = new ArrayList<>();
+		for (AdaptationOption option : options) {
+			if (option.isVerified && option.verificationResults.energyConsumption - energyMargin <= lowestEnergy) {
+				selected.add(option);
+			}
+		}
+		return selected;
+	}
+}
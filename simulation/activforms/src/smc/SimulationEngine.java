@@ -0,0 +1,242 @@
+package smc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import deltaiot.DeltaIoTSimulator;
+import deltaiot.services.QoS;
+import domain.Constant;
+import domain.Gateway;
+import domain.Node;
+import domain.SNREquation;
+import mapek.AdaptationOption;
+import mapek.Environment;
+import mapek.Link;
+import mapek.Mote;
+import mapek.SNR;
+import mapek.TrafficProbability;
+import simulator.Simulator;
+import util.ConfigLoader;
+
+/**
+ * Verification engine which estimates the qualities of the adaptation options in the JVM, by simulating them with
+ * the domain model of the simulator instead of model checking the quality models with Uppaal.
+ * For every option, the network of the configured simulator is rebuilt with the settings of the option and the
+ * environment of the cycle (the SNR of the links and the traffic of the motes are kept fixed), and simulated a number
+ * of times on the verification workers. The qualities are averaged over all the simulated periods:
+ *  - packetLoss: percentage of the generated packets which do not reach the gateway
+ *  - energyConsumption: energy consumed by the motes in a period (as reported to the gateway)
+ *  - latency: percentage of the packets reaching the gateway which arrive a period late
+ * The qualities follow the simulator, so they are close to (but not the same as) the results of the quality models.
+ */
+public class SimulationEngine implements VerificationEngine {
+
+	// The network of the configured simulator, only used for its structure (motes, gateways and turn order)
+	private final Simulator network;
+
+	// Independent simulations of each option and the amount of periods each of them simulates
+	private final int runs;
+	private final int periods;
+
+	// Bounded pool which simulates multiple adaptation options at the same time
+	private final ExecutorService verificationPool;
+
+	private final AtomicLong simulatedOptions = new AtomicLong();
+	private final AtomicLong simulationTime = new AtomicLong();
+
+	public SimulationEngine() {
+		ConfigLoader config = ConfigLoader.getInstance();
+		network = config.getSimulationNetwork().equals("DeltaIoTv2") ?
+			DeltaIoTSimulator.createSimulatorForDeltaIoTv2() : DeltaIoTSimulator.createSimulatorForDeltaIoT();
+
+		runs = Math.max(1, Integer.parseInt(config.getProperty("simulationEngine.runs", "10").trim()));
+		// The packets of the last period may still be on their way, so at least 2 periods are needed
+		periods = Math.max(2, Integer.parseInt(config.getProperty("simulationEngine.periods", "10").trim()));
+
+		verificationPool = Executors.newFixedThreadPool(config.getVerificationThreads(), runnable -> {
+			// Daemon threads, so an idle pool does not keep the simulation alive once all cycles are done
+			Thread thread = new Thread(runnable, "verification-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public long[] checkCAOs(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline) {
+		long[] verifTimes = new long[adaptationOptions.size()];
+
+		// The environment is the same for all options in the cycle
+		Map<String, Double> linksSNR = new HashMap<>();
+		for (SNR snr : environment.linksSNR) {
+			linksSNR.put(snr.source + "->" + snr.destination, snr.SNR);
+		}
+		Map<Integer, Double> motesLoad = new HashMap<>();
+		for (TrafficProbability traffic : environment.motesLoad) {
+			motesLoad.put(traffic.moteId, traffic.load);
+		}
+
+		// Results are only published while this holds, abandoned options stay untouched
+		AtomicBoolean open = new AtomicBoolean(true);
+
+		List<Future<?>> futures = new ArrayList<>(adaptationOptions.size());
+		for (int i = 0; i < adaptationOptions.size(); i++) {
+			AdaptationOption option = adaptationOptions.get(i);
+			final int index = i;
+			futures.add(verificationPool.submit(() ->
+				verifyOption(option, linksSNR, motesLoad, deadline, open, verifTimes, index)));
+		}
+
+		try {
+			for (Future<?> future : futures) {
+				future.get(deadline.remaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+			}
+		} catch (TimeoutException e) {
+			// The deadline expired, abandon the options that are still waiting or being simulated
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Simulation of an adaptation option failed.", e.getCause());
+		} finally {
+			synchronized (open) {
+				open.set(false);
+			}
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+		}
+
+		return verifTimes;
+	}
+
+	/**
+	 * Simulates the given option on the current thread, the qualities are only published (together with the
+	 * verification time) if the verification is still open once all the simulations are done.
+	 */
+	private void verifyOption(AdaptationOption option, Map<String, Double> linksSNR, Map<Integer, Double> motesLoad,
+			Deadline deadline, AtomicBoolean open, long[] verifTimes, int index) {
+		long startTime = System.currentTimeMillis();
+
+		double energyConsumption = 0;
+		double latency = 0;
+		long expectedPackets = 0;
+		long receivedPackets = 0;
+
+		for (int run = 0; run < runs; run++) {
+			Simulator simulator = createNetwork(option, linksSNR, motesLoad);
+			for (int period = 0; period < periods; period++) {
+				if (deadline.hasExpired() || Thread.currentThread().isInterrupted()) {
+					return;
+				}
+				simulator.doSingleRun();
+			}
+
+			Gateway gateway = simulator.getGateways().get(0);
+			List<QoS> qosValues = simulator.getQosValues();
+			for (int period = 0; period < periods; period++) {
+				QoS qos = qosValues.get(period);
+				energyConsumption += qos.getEnergyConsumption();
+				// The latency of a period is known in the next one
+				if (period > 0) {
+					latency += qos.getLatency();
+				}
+				// Packets of the last period which are still queued are not lost
+				if (period < periods - 1) {
+					expectedPackets += (long) qos.getSent();
+					receivedPackets += gateway.getReceivedPackets(period);
+				}
+			}
+		}
+
+		double packetLoss = expectedPackets == 0 ? 0 : 100.0 * (expectedPackets - receivedPackets) / expectedPackets;
+		long verifTime = System.currentTimeMillis() - startTime;
+
+		synchronized (open) {
+			if (!open.get()) {
+				return;
+			}
+			SMCChecker.setQuality(option.verificationResults, "packetLoss", packetLoss);
+			SMCChecker.setQuality(option.verificationResults, "energyConsumption", energyConsumption / (runs * periods));
+			SMCChecker.setQuality(option.verificationResults, "latency", latency * 100 / (runs * (periods - 1)));
+			option.isVerified = true;
+			verifTimes[index] = verifTime;
+		}
+
+		simulatedOptions.incrementAndGet();
+		simulationTime.addAndGet(verifTime);
+	}
+
+	/**
+	 * Builds the network of the configured simulator with the settings of the option and the given environment.
+	 * The SNR of the links does not depend on the power setting in this network (the environment already reflects it).
+	 */
+	Simulator createNetwork(AdaptationOption option, Map<String, Double> linksSNR, Map<Integer, Double> motesLoad) {
+		Simulator simulator = new Simulator();
+
+		for (Gateway gateway : network.getGateways()) {
+			simulator.addGateways(new Gateway(gateway.getId(), gateway.getPosition()));
+		}
+
+		for (domain.Mote mote : network.getMotes()) {
+			Mote optionMote = option.system.getMote(mote.getId());
+			domain.Mote newMote = new domain.Mote(mote.getId(), mote.getBatteryCapacity(),
+				optionMote == null ? mote.getLoad() : optionMote.getLoad(), mote.getMaxQueueSize(),
+				mote.getKeepAliveTime(), mote.getPosition(), false);
+
+			Double load = motesLoad.get(mote.getId());
+			if (load != null) {
+				newMote.setActivationProbability(new Constant<>(load / 100));
+			}
+			simulator.addMotes(newMote);
+		}
+
+		for (Gateway gateway : network.getGateways()) {
+			domain.Mote[] view = gateway.getView().stream()
+				.map(mote -> simulator.getMoteWithId(mote.getId())).toArray(domain.Mote[]::new);
+			simulator.getGatewayWithId(gateway.getId()).setView(view);
+		}
+
+		for (Mote mote : option.system.motes.values()) {
+			domain.Mote from = simulator.getMoteWithId(mote.getMoteId());
+			domain.Mote networkMote = network.getMoteWithId(mote.getMoteId());
+			if (from == null) {
+				throw new RuntimeException(String.format("Mote %d is not part of the simulated network.", mote.getMoteId()));
+			}
+
+			for (Link link : mote.getLinks()) {
+				Node to = simulator.getNodeWithId(link.getDestination());
+				if (to == null) {
+					throw new RuntimeException(String.format("Node %d is not part of the simulated network.", link.getDestination()));
+				}
+				domain.Link networkLink = networkMote.getLinkTo(network.getNodeWithId(link.getDestination()));
+				Gateway direction = networkLink == null ? simulator.getGateways().get(0) :
+					simulator.getGatewayWithId(networkLink.getDirection().getId());
+
+				from.addLinkTo(to, direction, link.getPower(), link.getDistribution());
+				Double snr = linksSNR.get(link.getSource() + "->" + link.getDestination());
+				from.getLinkTo(to).setSnrEquation(new SNREquation(0, snr == null ? 0 : snr));
+			}
+		}
+
+		simulator.setTurnOrder(network.getTurnOrder().toArray(new Integer[0]));
+		simulator.setMaxTimeSlots(network.getMaxTimeSlots());
+		simulator.setPacketDuplication(network.isPacketDuplication());
+		return simulator;
+	}
+
+	@Override
+	public void printStatistics() {
+		long options = simulatedOptions.get();
+		System.out.println(String.format("Simulation engine: %d options simulated (%d runs of %d periods), %.1f ms per option",
+			options, runs, periods, options == 0 ? 0.0 : (double) simulationTime.get() / options));
+	}
+}
@@ -0,0 +1,143 @@
+package smc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import mapek.AdaptationOption;
+import mapek.Environment;
+import mapek.Link;
+import mapek.Mote;
+import mapek.SNR;
+import mapek.TrafficProbability;
+
+/**
+ * Bounded LRU cache of the verification results of a single quality model.
+ * The keys only contain the inputs the quality model actually depends on, see {@link #getKey}.
+ */
+public class VerificationCache {
+
+	private final Map<String, Double> results;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	public VerificationCache(int capacity) {
+		// Access ordered map, so the eldest entry is always the least recently used one
+		results = new LinkedHashMap<String, Double>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+				if (size() > capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public synchronized Double get(String key) {
+		Double result = results.get(key);
+		if (result == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if a result is cached for the key (without counting as a lookup or affecting the LRU order).
+	 */
+	public synchronized boolean contains(String key) {
+		return results.containsKey(key);
+	}
+
+	public synchronized void put(String key, double result) {
+		results.put(key, result);
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized int size() {
+		return results.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("size:%d, hits:%d, misses:%d, evictions:%d", results.size(), hits, misses, evictions);
+	}
+
+
+	/**
+	 * Builds the canonical key of an adaptation option for a given quality model.
+	 * Only the values which are used by the quality model are part of the key:
+	 *  - energyConsumption: loads, queues, power settings and distributions of the links, traffic of the motes
+	 *  - latency: loads, queues and distributions of the links, traffic of the motes
+	 *  - packetLoss: distributions and SNR of the links, traffic of the motes
+	 * Values are rounded the same way as they are rendered in the quality models.
+	 * @param quality the key of the quality model (as specified in the properties file).
+	 * @param option the adaptation option.
+	 * @param environment the environment of the current cycle.
+	 * @return the key, or null if the dependencies of the quality model are unknown.
+	 */
+	public static String getKey(String quality, AdaptationOption option, Environment environment) {
+		boolean power, snr, load;
+
+		switch (quality) {
+			case "energyConsumption":
+				power = true; snr = false; load = true;
+				break;
+			case "latency":
+				power = false; snr = false; load = true;
+				break;
+			case "packetLoss":
+				power = false; snr = true; load = false;
+				break;
+			default:
+				return null;
+		}
+
+		StringBuilder key = new StringBuilder(256);
+		for (Mote mote : option.system.motes.values()) {
+			key.append(mote.getMoteId());
+			if (load) {
+				key.append('/').append(mote.getLoad()).append('/').append(mote.getQueueSize());
+			}
+			for (Link link : mote.getLinks()) {
+				key.append('[').append(link.getDestination()).append(',').append(link.getDistribution());
+				if (power) {
+					key.append(',').append(link.getPower());
+				}
+				key.append(']');
+			}
+			key.append(';');
+		}
+
+		if (snr) {
+			key.append('|');
+			for (SNR linkSNR : environment.linksSNR) {
+				key.append(Math.round(linkSNR.SNR)).append(',');
+			}
+		}
+
+		key.append('|');
+		for (TrafficProbability traffic : environment.motesLoad) {
+			key.append(Math.round(traffic.load)).append(',');
+		}
+
+		return key.toString();
+	}
+}
@@ -0,0 +1,114 @@
+package smc;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import mapek.AdaptationOption;
+import mapek.Environment;
+import mapek.Goal;
+import smc.distributed.VerificationCoordinator;
+import util.ConfigLoader;
+
+/**
+ * Determines the qualities of adaptation options for the run modes.
+ * Engines set the qualities in the verification results of the options and mark them as verified;
+ * options which could not be verified before the deadline stay unverified.
+ */
+public interface VerificationEngine {
+
+	/**
+	 * Verify a list of adaptation options.
+	 * @param adaptationOptions the options to verify.
+	 * @param environment the environment of the system in this cycle.
+	 * @param deadline the moment at which the verification of the options has to be stopped.
+	 * @return the verification time (in ms) of each option, 0 for options which were not verified.
+	 */
+	long[] checkCAOs(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline);
+
+	/**
+	 * Verifies the options in list order and hands every verified option to the listener once its qualities are known.
+	 * The verification stops as soon as the listener returns false (the options which are not verified yet are
+	 * abandoned) or the deadline expires. Engines which cannot stream their results verify the options in waves of
+	 * the size of the verification pool, and report the options of a wave once it is done.
+	 * @param listener called for each verified option, one option at a time.
+	 */
+	default long[] checkCAOs(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline,
+			Predicate<AdaptationOption> listener) {
+		long[] verifTimes = new long[adaptationOptions.size()];
+		int waveSize = ConfigLoader.getInstance().getVerificationThreads();
+
+		for (int start = 0; start < adaptationOptions.size() && !deadline.hasExpired(); start += waveSize) {
+			List<AdaptationOption> wave = adaptationOptions.subList(start, Math.min(start + waveSize, adaptationOptions.size()));
+			long[] times = checkCAOs(wave, environment, deadline);
+			System.arraycopy(times, 0, verifTimes, start, times.length);
+
+			for (AdaptationOption option : wave) {
+				if (option.isVerified && !listener.test(option)) {
+					return verifTimes;
+				}
+			}
+		}
+		return verifTimes;
+	}
+
+	/**
+	 * Two-stage verification of a list of adaptation options (engines without a cheaper first stage verify all of them).
+	 * @param goals the goals the planner evaluates for each option.
+	 */
+	default long[] checkCAOsWithScreening(List<AdaptationOption> adaptationOptions, Environment environment,
+			Deadline deadline, List<Goal> goals) {
+		return checkCAOs(adaptationOptions, environment, deadline);
+	}
+
+	/**
+	 * Verifies the qualities of the options lazily (engines which determine all qualities at once verify all of them).
+	 * @param goals the goals the planner evaluates for each option.
+	 */
+	default long[] checkCAOsLazily(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline,
+			List<Goal> goals) {
+		return checkCAOs(adaptationOptions, environment, deadline);
+	}
+
+	/**
+	 * @return the predicted time (in ms) the verification of the option takes, or -1 if the engine cannot predict it.
+	 */
+	default double predictVerificationTime(AdaptationOption option, Environment environment) {
+		return -1;
+	}
+
+	/**
+	 * @return the amount of model verifications which were not needed by the lazy verifications so far.
+	 */
+	default long getSkippedVerifications() {
+		return 0;
+	}
+
+	/**
+	 * Prints the statistics the engine gathered over all cycles.
+	 */
+	default void printStatistics() {
+	}
+
+	/**
+	 * @return the engine which is configured in the properties file (reusing the qualities of previous cycles if
+	 *   incremental verification is enabled, see {@link IncrementalVerification}).
+	 */
+	static VerificationEngine create() {
+		String name = ConfigLoader.getInstance().getVerificationEngine();
+		VerificationEngine engine;
+		switch (name) {
+			case "verifyta":
+				engine = new SMCChecker();
+				break;
+			case "simulation":
+				engine = new SimulationEngine();
+				break;
+			case "distributed":
+				engine = new VerificationCoordinator();
+				break;
+			default:
+				throw new RuntimeException(String.format("Verification engine %s is not supported.", name));
+		}
+		return ConfigLoader.getInstance().isIncrementalVerificationEnabled() ? new IncrementalVerification(engine) : engine;
+	}
+}
@@ -0,0 +1,109 @@
+package smc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of a single formula, as reported by the verifier.
+ */
+public class VerificationResult {
+
+	public enum Kind {
+		// simulate N[<=bound]{expressions}
+		SIMULATION,
+		// Pr[<=bound](<> expression): estimation of a probability
+		PROBABILITY,
+		// Pr[<=bound](<> expression) >= p: hypothesis test
+		HYPOTHESIS,
+		// Any other formula, only the raw output is available
+		OTHER;
+	}
+
+	private final Kind kind;
+
+	// Satisfaction of the formula (null if not reported)
+	Boolean satisfied = null;
+
+	// Probability estimation: the confidence interval and the amount of runs it is based on
+	double lowerBound = Double.NaN;
+	double upperBound = Double.NaN;
+	int runs = -1;
+
+	// Simulation: the last value of each simulated trajectory, in the order they were reported
+	final List<Double> trajectoryValues = new ArrayList<>();
+
+	// Statistics of the verifier (-1 if not reported)
+	long statesExplored = -1;
+	long cpuTime = -1;
+	long residentMemory = -1;
+
+	VerificationResult(Kind kind) {
+		this.kind = kind;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the value of the formula: the center of the confidence interval of a probability,
+	 *   the last value of the last trajectory of a simulation, or 1/0 for a satisfied/unsatisfied formula.
+	 */
+	public double getValue() {
+		switch (kind) {
+			case SIMULATION:
+				if (trajectoryValues.isEmpty()) {
+					throw new RuntimeException("Couldn't parse simulated value");
+				}
+				return trajectoryValues.get(trajectoryValues.size() - 1);
+			case PROBABILITY:
+				if (Double.isNaN(lowerBound)) {
+					throw new RuntimeException("Couldn't parse probability");
+				}
+				return (lowerBound + upperBound) / 2;
+			default:
+				if (satisfied == null) {
+					throw new RuntimeException("Couldn't parse formula satisfaction");
+				}
+				return satisfied ? 1 : 0;
+		}
+	}
+
+	public Boolean isSatisfied() {
+		return satisfied;
+	}
+
+	public double getLowerBound() {
+		return lowerBound;
+	}
+
+	public double getUpperBound() {
+		return upperBound;
+	}
+
+	public int getRuns() {
+		return runs;
+	}
+
+	public List<Double> getTrajectoryValues() {
+		return trajectoryValues;
+	}
+
+	public long getStatesExplored() {
+		return statesExplored;
+	}
+
+	public long getCpuTime() {
+		return cpuTime;
+	}
+
+	public long getResidentMemory() {
+		return residentMemory;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Kind:%s, satisfied:%s, bounds:[%s,%s], runs:%d, trajectories:%s", kind.name(), satisfied,
+			lowerBound, upperBound, runs, trajectoryValues);
+	}
+}
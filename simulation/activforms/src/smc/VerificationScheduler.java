@@ -0,0 +1,111 @@
+package smc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import mapek.AdaptationOption;
+import mapek.Environment;
+import mapek.Goal;
+import mapek.Goals;
+import util.ConfigLoader;
+
+/**
+ * Orders the options to verify so that as many options as possible which meet the goals are verified before the deadline.
+ * Every option belongs to a class (the prediction of the learner for the option). The probability that an option meets
+ * the goals is the rate at which the verified options of its class met them in the previous cycles, its cost is the
+ * verification time predicted by the engine (see {@link CostModel}).
+ * If all the options are expected to be verified in time, their order is kept. Otherwise the options are picked
+ * greedily by expected value per predicted verification time while they fit in the time left (times the amount of
+ * verification workers); the options which do not fit are verified last, in case the predictions are pessimistic.
+ */
+public class VerificationScheduler {
+
+	// Verified options of each class, and how many of them met the goals
+	private final Map<Integer, long[]> outcomes = new HashMap<>();
+
+	/**
+	 * @param options the options to verify, in the order they are verified if there is enough time.
+	 * @param classes the class of each of the options.
+	 * @return the options in the order in which they should be verified.
+	 */
+	public List<AdaptationOption> schedule(List<AdaptationOption> options, List<Integer> classes,
+			VerificationEngine engine, Environment environment, Deadline deadline) {
+		if (!deadline.isBounded() || options.isEmpty()) {
+			return options;
+		}
+		double budget = (double) deadline.remaining(TimeUnit.MILLISECONDS) * ConfigLoader.getInstance().getVerificationThreads();
+
+		double[] costs = new double[options.size()];
+		double totalCost = 0;
+		for (int i = 0; i < options.size(); i++) {
+			costs[i] = engine.predictVerificationTime(options.get(i), environment);
+			if (costs[i] < 0) {
+				// Nothing to base the order on yet
+				return options;
+			}
+			totalCost += costs[i];
+		}
+		if (totalCost <= budget) {
+			return options;
+		}
+
+		double[] values = new double[options.size()];
+		List<Integer> order = new ArrayList<>(options.size());
+		for (int i = 0; i < options.size(); i++) {
+			// Options which are not verified (cached results) go first, at the cost of a millisecond
+			values[i] = getSatisfactionRate(classes.get(i)) / Math.max(1, costs[i]);
+			order.add(i);
+		}
+		// Stable, so options with the same value keep their (fair) order
+		order.sort(Comparator.comparingDouble((Integer i) -> values[i]).reversed());
+
+		List<AdaptationOption> picked = new ArrayList<>(options.size());
+		List<AdaptationOption> remaining = new ArrayList<>();
+		for (int i : order) {
+			if (costs[i] <= budget) {
+				picked.add(options.get(i));
+				budget -= costs[i];
+			} else {
+				remaining.add(options.get(i));
+			}
+		}
+		picked.addAll(remaining);
+		return picked;
+	}
+
+	/**
+	 * Adds the verified options to the satisfaction rates of their classes.
+	 * @param goals the goals the options have to meet.
+	 */
+	public void recordOutcomes(List<AdaptationOption> options, List<Integer> classes, List<Goal> goals) {
+		Goals allGoals = Goals.getInstance();
+		for (int i = 0; i < options.size(); i++) {
+			AdaptationOption option = options.get(i);
+			if (!option.isVerified) {
+				continue;
+			}
+			boolean meetsGoals = true;
+			for (Goal goal : goals) {
+				meetsGoals &= allGoals.meetsGoal(goal, option.verificationResults);
+			}
+			long[] counts = outcomes.computeIfAbsent(classes.get(i), key -> new long[2]);
+			counts[0]++;
+			if (meetsGoals) {
+				counts[1]++;
+			}
+		}
+	}
+
+	/**
+	 * @return the probability that a verified option of the class meets the goals (1/2 for a class without history).
+	 */
+	public double getSatisfactionRate(int predictedClass) {
+		long[] counts = outcomes.get(predictedClass);
+		// Laplace smoothing, so a single verification does not rule a class out
+		return counts == null ? 0.5 : (counts[1] + 1.0) / (counts[0] + 2.0);
+	}
+}
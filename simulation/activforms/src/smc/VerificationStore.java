@@ -0,0 +1,335 @@
+package smc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import util.ConfigLoader;
+
+/**
+ * Persistent, content addressed store of verification results which is shared between runs.
+ *
+ * The results are kept in a memory mapped, append-only file:
+ *  - header: magic number (8 bytes), amount of records (8 bytes)
+ *  - records: SHA-256 digest of the verified model and its settings (32 bytes), result (8 bytes)
+ * A record is always written completely before the amount of records in the header is increased,
+ * so readers never observe a partial record. Appends are guarded with a file lock,
+ * which allows multiple runs to share the same store.
+ * Every open store holds a shared lock (past the end of the records) for as long as it is open. Compaction drops the
+ * duplicate records offline: it takes that lock exclusively (so it refuses to run while any other process uses the store)
+ * and rewrites the store in place:
+ *   java -cp activforms/target/activforms-0.0.1-SNAPSHOT-spring-boot.jar smc.VerificationStore [store]
+ * The store defaults to the verificationStore property (relative to the working directory).
+ */
+public class VerificationStore {
+
+	private static final long MAGIC = 0x564552494653544FL;
+	private static final int HEADER_SIZE = 16;
+	private static final int DIGEST_SIZE = 32;
+	private static final int RECORD_SIZE = DIGEST_SIZE + Double.BYTES;
+
+	// The file grows in steps of this many records, to avoid remapping at every append
+	private static final long RECORDS_PER_MAPPING_INCREMENT = 4096;
+
+	// The byte which is locked (shared) by every open store, far beyond any record
+	private static final long USAGE_LOCK_POSITION = Long.MAX_VALUE - 1;
+
+	private final Path path;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private FileChannel channel;
+	private MappedByteBuffer mapping;
+	// Held for as long as the store is open (null if another store of this process holds it already)
+	private FileLock usageLock;
+
+	// Offset of the record of each digest and the amount of records that have been indexed
+	private final Map<ByteBuffer, Long> index = new HashMap<>();
+	private long indexedRecords = 0;
+	private long duplicates = 0;
+
+	public VerificationStore(Path path) throws IOException {
+		this.path = path;
+		open();
+	}
+
+	private void open() throws IOException {
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		try {
+			usageLock = channel.lock(USAGE_LOCK_POSITION, 1, true);
+		} catch (OverlappingFileLockException e) {
+			// Another store of this process has the file open, its lock keeps the store from being compacted
+			usageLock = null;
+		}
+
+		FileLock headerLock = channel.lock(0, HEADER_SIZE, false);
+		try {
+			if (channel.size() < HEADER_SIZE) {
+				// New store: write the header
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putLong(MAGIC).putLong(0).flip();
+				channel.write(header, 0);
+			}
+			map(Math.max(channel.size(), HEADER_SIZE + RECORDS_PER_MAPPING_INCREMENT * RECORD_SIZE));
+		} finally {
+			headerLock.release();
+		}
+
+		if (mapping.getLong(0) != MAGIC) {
+			throw new IOException(String.format("The file at %s is not a verification store.", path));
+		}
+
+		index.clear();
+		indexedRecords = 0;
+		duplicates = 0;
+		indexNewRecords();
+	}
+
+	private void map(long size) throws IOException {
+		mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	/**
+	 * Adds the records which were appended (possibly by another run) since the last time to the index.
+	 * Should be called while holding the write lock.
+	 */
+	private void indexNewRecords() throws IOException {
+		long records = mapping.getLong(8);
+		if (HEADER_SIZE + records * RECORD_SIZE > mapping.capacity()) {
+			map(channel.size());
+		}
+
+		for (long record = indexedRecords; record < records; record++) {
+			long offset = HEADER_SIZE + record * RECORD_SIZE;
+			byte[] digest = new byte[DIGEST_SIZE];
+			for (int i = 0; i < DIGEST_SIZE; i++) {
+				digest[i] = mapping.get((int) offset + i);
+			}
+			if (index.put(ByteBuffer.wrap(digest), offset) != null) {
+				duplicates++;
+			}
+		}
+		indexedRecords = records;
+	}
+
+	/**
+	 * @param digest the digest of the verified model, see {@link #digest(SMCModel, ModelBuffer)}.
+	 * @return the stored result, or null if the model has not been verified before.
+	 */
+	public Double get(byte[] digest) {
+		ByteBuffer key = ByteBuffer.wrap(digest);
+
+		lock.readLock().lock();
+		try {
+			Long offset = index.get(key);
+			if (offset != null) {
+				return mapping.getDouble((int) (offset + DIGEST_SIZE));
+			}
+			if (mapping.getLong(8) == indexedRecords) {
+				return null;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		// Another run appended records in the meantime, check those as well
+		lock.writeLock().lock();
+		try {
+			indexNewRecords();
+			Long offset = index.get(key);
+			return offset == null ? null : mapping.getDouble((int) (offset + DIGEST_SIZE));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Appends the result of a verified model to the store.
+	 */
+	public void put(byte[] digest, double result) {
+		lock.writeLock().lock();
+		try {
+			FileLock headerLock = channel.lock(0, HEADER_SIZE, false);
+			try {
+				append(digest, result);
+			} finally {
+				headerLock.release();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Should be called while holding the write lock and the lock of the header.
+	 */
+	private void append(byte[] digest, double result) throws IOException {
+		// Records from other runs are indexed first, so this record ends up after them
+		indexNewRecords();
+
+		long offset = HEADER_SIZE + indexedRecords * RECORD_SIZE;
+		if (offset + RECORD_SIZE > mapping.capacity()) {
+			map(mapping.capacity() + RECORDS_PER_MAPPING_INCREMENT * RECORD_SIZE);
+		}
+
+		for (int i = 0; i < DIGEST_SIZE; i++) {
+			mapping.put((int) offset + i, digest[i]);
+		}
+		mapping.putDouble((int) offset + DIGEST_SIZE, result);
+
+		// Only publish the record once it has been written completely
+		mapping.putLong(8, indexedRecords + 1);
+
+		if (index.put(ByteBuffer.wrap(digest.clone()), offset) != null) {
+			duplicates++;
+		}
+		indexedRecords++;
+	}
+
+	/**
+	 * Rewrites the store at the path without duplicate records (the latest result of a digest is kept).
+	 * @throws IOException if the store is in use by another process (or could not be rewritten).
+	 */
+	public static void compact(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			FileLock usageLock;
+			try {
+				usageLock = channel.tryLock(USAGE_LOCK_POSITION, 1, false);
+			} catch (OverlappingFileLockException e) {
+				usageLock = null;
+			}
+			if (usageLock == null) {
+				throw new IOException(String.format("The verification store at %s is in use by another run.", path));
+			}
+			try {
+				if (channel.size() < HEADER_SIZE) {
+					throw new IOException(String.format("The file at %s is not a verification store.", path));
+				}
+				MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (mapping.getLong(0) != MAGIC) {
+					throw new IOException(String.format("The file at %s is not a verification store.", path));
+				}
+
+				Map<ByteBuffer, Double> results = new LinkedHashMap<>();
+				long records = mapping.getLong(8);
+				for (long record = 0; record < records; record++) {
+					long offset = HEADER_SIZE + record * RECORD_SIZE;
+					byte[] digest = new byte[DIGEST_SIZE];
+					for (int i = 0; i < DIGEST_SIZE; i++) {
+						digest[i] = mapping.get((int) offset + i);
+					}
+					ByteBuffer key = ByteBuffer.wrap(digest);
+					results.remove(key);
+					results.put(key, mapping.getDouble((int) offset + DIGEST_SIZE));
+				}
+
+				ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + results.size() * RECORD_SIZE);
+				buffer.putLong(MAGIC).putLong(results.size());
+				for (Map.Entry<ByteBuffer, Double> entry : results.entrySet()) {
+					buffer.put(entry.getKey().array()).putDouble(entry.getValue());
+				}
+
+				// A copy is kept until the store has been rewritten, in case the compaction is interrupted
+				Path backup = path.resolveSibling(path.getFileName() + ".compact");
+				Files.write(backup, buffer.array());
+
+				// The store is rewritten in place, runs which are waiting to open it see the compacted file
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer, buffer.position());
+				}
+				channel.truncate(HEADER_SIZE + results.size() * RECORD_SIZE);
+				channel.force(true);
+				Files.delete(backup);
+				System.out.println(String.format("Compacted %s: %d of %d records kept", path, results.size(), records));
+			} finally {
+				usageLock.release();
+			}
+		}
+	}
+
+	/**
+	 * Compacts the store, see {@link #compact(Path)}.
+	 */
+	public static void main(String[] args) throws IOException {
+		String store = args.length > 0 ? args[0] : ConfigLoader.getInstance().getVerificationStore().trim();
+		if (store.isEmpty()) {
+			throw new RuntimeException("No verification store is configured.");
+		}
+		compact(Paths.get(System.getProperty("user.dir")).resolve(store));
+	}
+
+	/**
+	 * Releases the store, it can no longer be used afterwards.
+	 */
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (usageLock != null) {
+				usageLock.release();
+			}
+			channel.close();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public long getRecords() {
+		lock.readLock().lock();
+		try {
+			return indexedRecords;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public long getDuplicates() {
+		lock.readLock().lock();
+		try {
+			return duplicates;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Computes the content address of a rendered quality model.
+	 * Besides the model text, the verification settings of the model are part of the digest.
+	 * @param model the quality model (used for alpha, epsilon and the amount of simulations).
+	 * @param renderedModel the text of the model, including the adaptation option and environment.
+	 * @return the SHA-256 digest.
+	 */
+	public static byte[] digest(SMCModel model, ModelBuffer renderedModel) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(renderedModel.getBytes(), 0, renderedModel.length());
+			digest.update(String.format("|%s|%s|%s|%d", model.getType(), model.getAlpha(), model.getEpsilon(),
+				model.getSimulations()).getBytes(Charset.defaultCharset()));
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-256 is not supported on this platform.", e);
+		}
+	}
+}
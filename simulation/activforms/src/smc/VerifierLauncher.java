@@ -0,0 +1,212 @@
+package smc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import util.ConfigLoader;
+
+/**
+ * Hands rendered quality models to the verifier.
+ * The way the model reaches the verifier process is configured with the verifierLauncher property:
+ *  - stdin: the model is streamed through a pipe, nothing is written to disk
+ *  - tmpfs: the model is written to a RAM-backed temporary folder
+ *  - file:  the model is written to the target folder of the models
+ */
+public abstract class VerifierLauncher {
+
+	// The verifier reads the model from its standard input when this is passed as the model
+	static final String STDIN_MODEL = "-";
+
+	private final String[] commandTemplate;
+
+	VerifierLauncher(String commandTemplate) {
+		String[] command = split(commandTemplate);
+		if (ExecuteCommand.STATISTICS && !Arrays.asList(command).contains("-u")) {
+			// The verifier only reports its statistics (used by the telemetry) with this option
+			command = Stream.concat(Stream.of(command[0], "-u"), Arrays.stream(command, 1, command.length))
+				.toArray(String[]::new);
+		}
+		this.commandTemplate = command;
+	}
+
+	/**
+	 * Prepares the verification of a rendered model. The rendered model can be reused as soon as this returns.
+	 * @param model the quality model which was rendered.
+	 * @param renderedModel the text of the model, including the adaptation option and environment.
+	 * @return the command which verifies the model.
+	 */
+	public abstract ExecuteCommand prepare(SMCModel model, ModelBuffer renderedModel) throws IOException;
+
+	/**
+	 * Fills in the verification settings and the location of the model in the command template.
+	 * Every format specifier in the template has to be a separate word, in the order alpha, epsilon, model.
+	 */
+	public String[] getCommand(String modelPath, double alpha, double epsilon) {
+		Object[] arguments = { alpha, epsilon, modelPath };
+		String[] command = new String[commandTemplate.length];
+
+		int argument = 0;
+		for (int i = 0; i < commandTemplate.length; i++) {
+			command[i] = commandTemplate[i].contains("%") ?
+				String.format(commandTemplate[i], arguments[argument++]) : commandTemplate[i];
+		}
+
+		// The verifier is located relative to the working directory
+		if (!Paths.get(command[0]).isAbsolute()) {
+			command[0] = Paths.get(System.getProperty("user.dir"), command[0]).toString();
+		}
+		return command;
+	}
+
+	/**
+	 * Creates the launcher which is configured in the properties file.
+	 */
+	public static VerifierLauncher create() {
+		ConfigLoader config = ConfigLoader.getInstance();
+		String command = config.getProperty("verifierCommand", "uppaal-verifyta/verifyta -a %f -E %f -u %s");
+		String launcher = config.getProperty("verifierLauncher", "file").trim().toLowerCase();
+
+		switch (launcher) {
+			case "stdin":
+				return new StdinLauncher(command, createTmpfsLauncher(command));
+			case "tmpfs":
+				return createTmpfsLauncher(command);
+			case "file":
+				String modelsFolderName = config.getProperty("modelsFolderName");
+				return new FileLauncher(command, Paths.get(System.getProperty("user.dir"), modelsFolderName, "target"));
+			default:
+				throw new RuntimeException(String.format("Unknown verifier launcher: %s", launcher));
+		}
+	}
+
+	private static FileLauncher createTmpfsLauncher(String command) {
+		// /dev/shm is backed by memory on Linux, other platforms use the temporary folder of the system
+		Path shm = Paths.get("/dev/shm");
+		Path parent = Files.isDirectory(shm) && Files.isWritable(shm) ?
+			shm : Paths.get(System.getProperty("java.io.tmpdir"));
+
+		try {
+			Path root = Files.createTempDirectory(parent, "activforms-");
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> delete(root)));
+			return new FileLauncher(command, root);
+		} catch (IOException e) {
+			throw new RuntimeException(String.format("Could not create a temporary folder in %s", parent), e);
+		}
+	}
+
+	private static void delete(Path folder) {
+		try (Stream<Path> paths = Files.walk(folder)) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static String[] split(String command) {
+		StringTokenizer tokenizer = new StringTokenizer(command);
+		String[] tokens = new String[tokenizer.countTokens()];
+		for (int i = 0; tokenizer.hasMoreTokens(); i++) {
+			tokens[i] = tokenizer.nextToken();
+		}
+		return tokens;
+	}
+
+
+	/**
+	 * Writes each model in a workspace of the current thread, so no two threads share a model file.
+	 */
+	static class FileLauncher extends VerifierLauncher {
+
+		private final Path root;
+		private final AtomicInteger workspaceCounter = new AtomicInteger();
+		private final ThreadLocal<Path> workspaces;
+
+		FileLauncher(String commandTemplate, Path root) {
+			super(commandTemplate);
+			this.root = root;
+			this.workspaces = ThreadLocal.withInitial(() -> this.root.resolve("workspace-" + workspaceCounter.getAndIncrement()));
+		}
+
+		@Override
+		public ExecuteCommand prepare(SMCModel model, ModelBuffer renderedModel) throws IOException {
+			return prepare(model, renderedModel.getBytes(), renderedModel.length());
+		}
+
+		ExecuteCommand prepare(SMCModel model, byte[] renderedModel, int length) throws IOException {
+			Path workspace = workspaces.get();
+			Files.createDirectories(workspace);
+
+			Path modelPath = workspace.resolve(Paths.get(model.getPath()).getFileName());
+			try (OutputStream out = Files.newOutputStream(modelPath)) {
+				out.write(renderedModel, 0, length);
+			}
+
+			return new ExecuteCommand(getCommand(modelPath.toString(), model.alpha, model.epsilon), null, model);
+		}
+	}
+
+
+	/**
+	 * Streams each model to the standard input of the verifier.
+	 * Verifiers which do not read models from their standard input are detected at the first verification,
+	 * from then on the models are handed over by the fallback launcher instead.
+	 */
+	static class StdinLauncher extends VerifierLauncher {
+
+		private final FileLauncher fallback;
+
+		// null as long as no verifier which got its model through the standard input ran to its end
+		private volatile Boolean stdinSupported = null;
+
+		StdinLauncher(String commandTemplate, FileLauncher fallback) {
+			super(commandTemplate);
+			this.fallback = fallback;
+		}
+
+		@Override
+		public ExecuteCommand prepare(SMCModel model, ModelBuffer renderedModel) throws IOException {
+			if (Boolean.FALSE.equals(stdinSupported)) {
+				return fallback.prepare(model, renderedModel);
+			}
+
+			// The rendered model is copied, since the buffer is reused before the command runs
+			byte[] input = Arrays.copyOf(renderedModel.getBytes(), renderedModel.length());
+			String[] command = getCommand(STDIN_MODEL, model.alpha, model.epsilon);
+
+			return new ExecuteCommand(command, input, model) {
+				@Override
+				public String call() throws Exception {
+					super.call();
+					// Only decided on a verifier which ran to its end, an empty output of a cancelled or killed
+					// verifier does not tell whether it reads the standard input
+					if (stdinSupported == null) {
+						if (!getResults().isEmpty()) {
+							stdinSupported = true;
+						} else if (hasExited()) {
+							stdinSupported = false;
+							System.out.println("The verifier does not read models from its standard input, "
+								+ "falling back to a temporary folder.");
+						}
+					}
+					if (Boolean.FALSE.equals(stdinSupported) && !isCancelled()) {
+						ExecuteCommand fallbackCommand = fallback.prepare(model, input, input.length);
+						result = fallbackCommand.call();
+						parser = fallbackCommand.parser;
+						spawnTime += fallbackCommand.spawnTime;
+						wallTime += fallbackCommand.wallTime;
+					}
+					return result;
+				}
+			};
+		}
+	}
+}
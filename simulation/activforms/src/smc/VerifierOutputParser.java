@@ -0,0 +1,173 @@
+package smc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the output of the verifier line by line, while the verifier is still running.
+ * The parser knows which formulas are verified, so it can tell when all the values that are needed
+ * have been reported (after that, the rest of the output can be ignored).
+ */
+public class VerifierOutputParser {
+
+	static final String FORMULA = "Verifying formula ";
+	static final String SATISFIED = "Formula is satisfied";
+	static final String NOT_SATISFIED = "Formula is NOT satisfied";
+	static final String RUNS = " runs)";
+	static final String PROBABILITY_BOUNDS = ") in [";
+
+	// -- States explored : 147698 states
+	static final String STATES_EXPLORED = "-- States explored : ";
+	// -- CPU user time used : 571 ms
+	static final String CPU_TIME = "-- CPU user time used : ";
+	// -- Resident memory used : 6164 KiB
+	static final String RESIDENT_MEM = "-- Resident memory used : ";
+
+	private static final Pattern SIMULATE = Pattern.compile("simulate\\s+(\\d+)\\s*\\[[^\\]]*\\]\\s*\\{(.*)\\}", Pattern.DOTALL);
+	private static final Pattern HYPOTHESIS = Pattern.compile("Pr\\s*\\[.*\\)\\s*(>=|<=|>|<)", Pattern.DOTALL);
+	// A trajectory of a simulation, e.g. [0]: (0,0) (0,1.5) (30,11.4)
+	private static final Pattern TRAJECTORY = Pattern.compile("^\\[\\d+\\]:");
+
+	private final VerificationResult.Kind[] kinds;
+	// The amount of trajectories that are reported for each formula (only for simulations)
+	private final int[] trajectories;
+
+	private final List<VerificationResult> results = new ArrayList<>();
+	private VerificationResult current = null;
+	// Whether a formula is only complete once the statistics of the verifier are reported for it
+	private final boolean statistics;
+
+	/**
+	 * @param formulas the formulas in the order they are verified (as they appear in the model).
+	 */
+	public VerifierOutputParser(List<String> formulas) {
+		this(formulas, false);
+	}
+
+	/**
+	 * @param formulas the formulas in the order they are verified (as they appear in the model).
+	 * @param statistics whether the output is read until the statistics of every formula are reported
+	 *   (the resident memory is the last of them), see the -u option of the verifier.
+	 */
+	public VerifierOutputParser(List<String> formulas, boolean statistics) {
+		this.statistics = statistics;
+		kinds = new VerificationResult.Kind[formulas.size()];
+		trajectories = new int[formulas.size()];
+
+		for (int i = 0; i < formulas.size(); i++) {
+			String formula = formulas.get(i).trim();
+			Matcher simulate = SIMULATE.matcher(formula);
+
+			if (simulate.lookingAt()) {
+				kinds[i] = VerificationResult.Kind.SIMULATION;
+				// Each simulated expression is reported for every run
+				trajectories[i] = Integer.parseInt(simulate.group(1)) * simulate.group(2).split(",").length;
+			} else if (HYPOTHESIS.matcher(formula).lookingAt()) {
+				kinds[i] = VerificationResult.Kind.HYPOTHESIS;
+			} else if (formula.startsWith("Pr")) {
+				kinds[i] = VerificationResult.Kind.PROBABILITY;
+			} else {
+				kinds[i] = VerificationResult.Kind.OTHER;
+			}
+		}
+	}
+
+	/**
+	 * Parses the next line of the output.
+	 * @return true if all the formulas have been reported completely.
+	 */
+	public boolean accept(String line) {
+		if (line.startsWith(FORMULA)) {
+			int index = results.size();
+			current = new VerificationResult(index < kinds.length ? kinds[index] : VerificationResult.Kind.OTHER);
+			results.add(current);
+			return false;
+		}
+		if (current == null) {
+			return false;
+		}
+
+		if (line.contains(NOT_SATISFIED)) {
+			current.satisfied = false;
+		} else if (line.contains(SATISFIED)) {
+			current.satisfied = true;
+		}
+
+		int runsEnd = line.indexOf(RUNS);
+		if (runsEnd != -1) {
+			current.runs = Integer.parseInt(line.substring(line.lastIndexOf('(', runsEnd) + 1, runsEnd).trim());
+		}
+
+		int boundsStart = line.indexOf(PROBABILITY_BOUNDS);
+		if (boundsStart != -1 && line.contains("Pr(")) {
+			boundsStart += PROBABILITY_BOUNDS.length();
+			String[] bounds = line.substring(boundsStart, line.indexOf(']', boundsStart)).split(",");
+			current.lowerBound = Double.parseDouble(bounds[0]);
+			current.upperBound = Double.parseDouble(bounds[1]);
+		}
+
+		if (TRAJECTORY.matcher(line).lookingAt()) {
+			// Only the last point of the trajectory is kept
+			String pair = line.substring(line.lastIndexOf('(') + 1, line.lastIndexOf(')'));
+			current.trajectoryValues.add(Double.parseDouble(pair.split(",")[1]));
+		}
+
+		current.statesExplored = parseStatistic(line, STATES_EXPLORED, " states", current.statesExplored);
+		current.cpuTime = parseStatistic(line, CPU_TIME, " ms", current.cpuTime);
+		current.residentMemory = parseStatistic(line, RESIDENT_MEM, " KiB", current.residentMemory);
+
+		return isComplete();
+	}
+
+	/**
+	 * @return true if the values of all the formulas are known.
+	 */
+	public boolean isComplete() {
+		if (results.size() < kinds.length || kinds.length == 0) {
+			return false;
+		}
+		for (int i = 0; i < kinds.length; i++) {
+			if (!isComplete(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isComplete(int formula) {
+		VerificationResult result = results.get(formula);
+		if (statistics && result.residentMemory < 0) {
+			return false;
+		}
+		switch (kinds[formula]) {
+			case SIMULATION:
+				return result.trajectoryValues.size() >= trajectories[formula];
+			case PROBABILITY:
+				return !Double.isNaN(result.upperBound);
+			case HYPOTHESIS:
+				return result.satisfied != null;
+			default:
+				// Nothing is known about the output of other formulas, so they are read until the end
+				return false;
+		}
+	}
+
+	/**
+	 * @return the results of the formulas which have been reported so far.
+	 */
+	public List<VerificationResult> getResults() {
+		return results;
+	}
+
+	private static long parseStatistic(String line, String prefix, String unit, long current) {
+		int start = line.indexOf(prefix);
+		if (start == -1) {
+			return current;
+		}
+		start += prefix.length();
+		int end = line.indexOf(unit, start);
+		return Long.parseLong(line.substring(start, end == -1 ? line.length() : end).trim());
+	}
+}
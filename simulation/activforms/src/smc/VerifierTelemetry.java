@@ -0,0 +1,189 @@
+package smc;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resource usage of the verifier, kept per quality model over a rolling window of its latest verifications:
+ *  - wall: time from the launch of the verifier until its output is read (µs)
+ *  - spawn: time it takes to start the verifier process (µs)
+ *  - cpu, memory, states: the CPU user time (ms), resident memory (KiB) and states explored reported by the verifier
+ * For the adaptation options (under {@link #OPTION}), the time their verification waited for a worker of the pool
+ * (queue), their verification time (wall) and the CPU time of all their models are kept.
+ */
+public class VerifierTelemetry {
+
+	// The entry which combines all the models of an adaptation option
+	public static final String OPTION = "option";
+
+	public enum Metric {
+		WALL("wall", "us"),
+		QUEUE("queue", "us"),
+		SPAWN("spawn", "us"),
+		CPU("cpu", "ms"),
+		MEMORY("memory", "KiB"),
+		STATES("states", "states");
+
+		public final String val;
+		public final String unit;
+
+		Metric(String val, String unit) {
+			this.val = val;
+			this.unit = unit;
+		}
+	}
+
+	private final int window;
+	// The file the histograms are written to (null if they are not exported)
+	private final Path export;
+
+	private final Map<String, Map<Metric, RollingHistogram>> histograms = new ConcurrentHashMap<>();
+
+	public VerifierTelemetry(int window, Path export) {
+		this.window = Math.max(1, window);
+		this.export = export;
+	}
+
+	public void record(String model, Metric metric, long value) {
+		Map<Metric, RollingHistogram> metrics = histograms.computeIfAbsent(model, key -> new EnumMap<>(Metric.class));
+		RollingHistogram histogram;
+		synchronized (metrics) {
+			histogram = metrics.computeIfAbsent(metric, key -> new RollingHistogram(window));
+		}
+		histogram.add(value);
+	}
+
+	/**
+	 * Records a verification of the model.
+	 * @param wallNanos the time it took to verify the model.
+	 * @param spawnNanos the time it took to start the verifier.
+	 * @param results the results of the formulas of the model, with the statistics of the verifier.
+	 * @return the CPU time the verifier reported (ms), 0 if it did not report any.
+	 */
+	public long recordVerification(String model, long wallNanos, long spawnNanos, List<VerificationResult> results) {
+		record(model, Metric.WALL, wallNanos / 1000);
+		record(model, Metric.SPAWN, spawnNanos / 1000);
+
+		// The CPU time and memory are those of the process so far, the states are explored per formula
+		long cpuTime = -1, memory = -1, states = -1;
+		for (VerificationResult result : results) {
+			cpuTime = Math.max(cpuTime, result.getCpuTime());
+			memory = Math.max(memory, result.getResidentMemory());
+			if (result.getStatesExplored() >= 0) {
+				states = Math.max(states, 0) + result.getStatesExplored();
+			}
+		}
+		if (cpuTime >= 0) {
+			record(model, Metric.CPU, cpuTime);
+		}
+		if (memory >= 0) {
+			record(model, Metric.MEMORY, memory);
+		}
+		if (states >= 0) {
+			record(model, Metric.STATES, states);
+		}
+		return Math.max(cpuTime, 0);
+	}
+
+	/**
+	 * Writes the histograms to the export file (if configured), one line per bucket:
+	 * model;metric;unit;bucket lower bound;bucket upper bound;count
+	 */
+	public void export() {
+		if (export == null) {
+			return;
+		}
+		try {
+			Files.createDirectories(export.toAbsolutePath().getParent());
+			try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(export))) {
+				out.println("model;metric;unit;from;to;count");
+				histograms.forEach((model, metrics) -> {
+					synchronized (metrics) {
+						metrics.forEach((metric, histogram) -> {
+							long[] buckets = histogram.getBuckets();
+							for (int i = 0; i < buckets.length; i++) {
+								if (buckets[i] > 0) {
+									out.println(String.format("%s;%s;%s;%d;%d;%d", model, metric.val, metric.unit,
+										i == 0 ? 0 : 1L << (i - 1), (1L << i) - 1, buckets[i]));
+								}
+							}
+						});
+					}
+				});
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Prints the median, 90th percentile and maximum of every metric, over the rolling window.
+	 */
+	public void printStatistics() {
+		histograms.forEach((model, metrics) -> {
+			StringBuilder line = new StringBuilder(String.format("Verifier telemetry %s:", model));
+			synchronized (metrics) {
+				metrics.forEach((metric, histogram) -> {
+					long[] values = histogram.getValues();
+					if (values.length > 0) {
+						line.append(String.format(" %s p50 %d p90 %d max %d %s (%d samples);", metric.val,
+							percentile(values, 0.5), percentile(values, 0.9), values[values.length - 1], metric.unit,
+							values.length));
+					}
+				});
+			}
+			System.out.println(line);
+		});
+	}
+
+	private static long percentile(long[] sorted, double fraction) {
+		return sorted[Math.min(sorted.length - 1, (int) Math.floor(fraction * sorted.length))];
+	}
+
+
+	/**
+	 * The latest values of a metric, in a ring buffer.
+	 */
+	private static class RollingHistogram {
+		private final long[] values;
+		private int next = 0;
+		private int size = 0;
+
+		RollingHistogram(int window) {
+			values = new long[window];
+		}
+
+		synchronized void add(long value) {
+			values[next] = value;
+			next = (next + 1) % values.length;
+			size = Math.min(size + 1, values.length);
+		}
+
+		/**
+		 * @return the values in the window, sorted.
+		 */
+		synchronized long[] getValues() {
+			long[] sorted = Arrays.copyOf(values, size);
+			Arrays.sort(sorted);
+			return sorted;
+		}
+
+		/**
+		 * @return the amount of values in the window per power of two: bucket 0 holds 0, bucket i holds [2^(i-1), 2^i).
+		 */
+		synchronized long[] getBuckets() {
+			long[] buckets = new long[Long.SIZE + 1];
+			for (int i = 0; i < size; i++) {
+				buckets[Long.SIZE - Long.numberOfLeadingZeros(Math.max(0, values[i]))]++;
+			}
+			return buckets;
+		}
+	}
+}
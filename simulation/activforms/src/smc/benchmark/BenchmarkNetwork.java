@@ -0,0 +1,91 @@
+package smc.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import deltaiot.DeltaIoTSimulator;
+import domain.RunInfo;
+import mapek.AdaptationOption;
+import mapek.Environment;
+import mapek.Link;
+import mapek.ManagedSystem;
+import mapek.Mote;
+import mapek.SNR;
+import mapek.TrafficProbability;
+import simulator.Simulator;
+import util.ConfigLoader;
+
+/**
+ * Knowledge of the simulated network (configured in the properties file), used as input for the benchmarks.
+ */
+public class BenchmarkNetwork {
+
+	private final ManagedSystem system = new ManagedSystem();
+	private final Environment environment = new Environment();
+
+	public BenchmarkNetwork() {
+		String network = ConfigLoader.getInstance().getSimulationNetwork();
+		Simulator simulator = network.equals("DeltaIoTv2") ?
+			DeltaIoTSimulator.createSimulatorForDeltaIoTv2() : DeltaIoTSimulator.createSimulatorForDeltaIoT();
+		RunInfo runInfo = simulator.getRunInfo();
+
+		for (domain.Mote simMote : simulator.getMotes()) {
+			Mote mote = new Mote(simMote.getId(), simMote.getBatteryRemaining(), simMote.getLoad(), simMote.getQueueSize());
+			for (domain.Link simLink : simMote.getLinks()) {
+				mote.getLinks().add(new Link(simMote.getId(), simLink.getTo().getId(), simLink.getPowerNumber(),
+					simLink.getDistribution()));
+				environment.linksSNR.add(new SNR(simMote.getId(), simLink.getTo().getId(), simLink.getSNR(runInfo)));
+			}
+			system.setMote(mote.getMoteId(), mote);
+			environment.motesLoad.add(new TrafficProbability(simMote.getId(),
+				simMote.getActivationProbability().get(runInfo.getRunNumber()) * 100));
+		}
+	}
+
+	public Environment getEnvironment() {
+		return environment;
+	}
+
+	/**
+	 * @return the managed system in its initial configuration (motes and links in the order of the simulator).
+	 */
+	public ManagedSystem getSystem() {
+		return system;
+	}
+
+	/**
+	 * Builds adaptation options which differ in the distributions of the motes with 2 parents.
+	 * @param amount the amount of options.
+	 * @param gap the difference in distribution between consecutive options.
+	 */
+	public List<AdaptationOption> getOptions(int amount, int gap) {
+		List<Mote> twoParentMotes = new LinkedList<>();
+		List<AdaptationOption> options = new ArrayList<>(amount);
+
+		for (int i = 0; i < amount; i++) {
+			AdaptationOption option = new AdaptationOption();
+			option.system = system.getCopy();
+			option.overallIndex = i;
+
+			twoParentMotes.clear();
+			for (Mote mote : option.system.motes.values()) {
+				if (mote.getLinks().size() == 2) {
+					twoParentMotes.add(mote);
+				}
+			}
+
+			// Mixed radix encoding of the option index over the distributions of the motes
+			int remainder = i;
+			int values = 100 / gap + 1;
+			for (Mote mote : twoParentMotes) {
+				int distribution = (remainder % values) * gap;
+				remainder /= values;
+				mote.getLink(0).setDistribution(distribution);
+				mote.getLink(1).setDistribution(100 - distribution);
+			}
+			options.add(option);
+		}
+		return options;
+	}
+}
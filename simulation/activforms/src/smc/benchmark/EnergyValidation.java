@@ -0,0 +1,144 @@
+package smc.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import mapek.AdaptationOption;
+import mapek.Environment;
+import mapek.Link;
+import mapek.Mote;
+import mapek.SNR;
+import mapek.TrafficProbability;
+import smc.Deadline;
+import smc.EnergyEvaluator;
+import smc.ModelType;
+import smc.SMCChecker;
+import smc.SMCModel;
+import smc.SMCModelLoader;
+
+/**
+ * Cross-validates the analytical energy consumption against the energy consumption verified with Uppaal.
+ * Either on the datasets logged by the activforms run mode (the features hold the SNR, power settings and
+ * distributions of the links and the traffic of the motes, in the order of the simulator), or by verifying
+ * options of the configured network (energyConsumption.type has to be simulation for the latter).
+ * Run from the simulation folder (next to SMCConfig.properties):
+ *   java -cp activforms/target/activforms-0.0.1-SNAPSHOT-spring-boot.jar smc.benchmark.EnergyValidation [log folder]
+ *   java -cp activforms/target/activforms-0.0.1-SNAPSHOT-spring-boot.jar smc.benchmark.EnergyValidation --verify [options]
+ */
+public class EnergyValidation {
+
+	public static void main(String[] args) throws IOException {
+		BenchmarkNetwork network = new BenchmarkNetwork();
+		SMCModel model = getEnergyModel();
+		EnergyEvaluator evaluator = new EnergyEvaluator(model);
+
+		if (args.length > 0 && args[0].equals("--verify")) {
+			if (model.getType() == ModelType.ANALYTICAL) {
+				throw new RuntimeException("The energy consumption model has to be verified with Uppaal (energyConsumption.type=simulation).");
+			}
+			int amount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+			List<AdaptationOption> options = network.getOptions(amount, 20);
+			new SMCChecker().checkCAOs(options, network.getEnvironment(), Deadline.NONE);
+
+			double[] verified = options.stream().mapToDouble(option -> option.verificationResults.energyConsumption).toArray();
+			report("verified options", verified, evaluator.evaluate(options, network.getEnvironment()));
+			return;
+		}
+
+		File folder = new File(args.length > 0 ? args[0] : "activforms/log");
+		File[] datasets = folder.listFiles((dir, name) -> name.startsWith("dataset_with_all_features") && name.endsWith(".json"));
+		if (datasets == null || datasets.length == 0) {
+			throw new RuntimeException(String.format("No logged datasets found in %s.", folder.getAbsolutePath()));
+		}
+		Arrays.sort(datasets);
+
+		for (File dataset : datasets) {
+			JSONObject root;
+			try (InputStream input = new FileInputStream(dataset)) {
+				root = new JSONObject(new JSONTokener(input));
+			}
+			JSONArray features = root.getJSONArray("features");
+			JSONArray targets = root.getJSONArray("target_regression_energyconsumption");
+
+			Environment environment = null;
+			List<AdaptationOption> options = new ArrayList<>(features.length());
+			double[] verified = new double[features.length()];
+			for (int i = 0; i < features.length(); i++) {
+				JSONArray row = features.getJSONArray(i);
+				// The environment is the same for all the options of a cycle
+				if (environment == null) {
+					environment = getEnvironment(network, row);
+				}
+				options.add(getOption(network, row));
+				verified[i] = targets.getDouble(i);
+			}
+			report(dataset.getName(), verified, evaluator.evaluate(options, environment));
+		}
+	}
+
+	private static SMCModel getEnergyModel() {
+		for (SMCModel model : new SMCModelLoader().loadModels()) {
+			if (model.getKey().equals("energyConsumption")) {
+				return model;
+			}
+		}
+		throw new RuntimeException("The energy consumption is not one of the requirements.");
+	}
+
+	private static Environment getEnvironment(BenchmarkNetwork network, JSONArray row) {
+		Environment environment = network.getEnvironment().getCopy();
+		int index = 0;
+		for (SNR snr : environment.linksSNR) {
+			snr.SNR = row.getDouble(index++);
+		}
+		// Skip the power settings and distributions of the links
+		index += 2 * environment.linksSNR.size();
+		for (TrafficProbability traffic : environment.motesLoad) {
+			traffic.load = row.getDouble(index++);
+		}
+		return environment;
+	}
+
+	private static AdaptationOption getOption(BenchmarkNetwork network, JSONArray row) {
+		AdaptationOption option = new AdaptationOption();
+		option.system = network.getSystem().getCopy();
+
+		int links = network.getEnvironment().linksSNR.size();
+		int index = 0;
+		for (Mote mote : option.system.motes.values()) {
+			for (Link link : mote.getLinks()) {
+				link.setPower(row.getInt(links + index));
+				link.setDistribution(row.getInt(2 * links + index));
+				index++;
+			}
+		}
+		return option;
+	}
+
+	private static void report(String name, double[] verified, double[] evaluated) {
+		double absoluteError = 0, maxError = 0, relativeError = 0;
+		int verifiedBest = 0, evaluatedBest = 0;
+		for (int i = 0; i < verified.length; i++) {
+			double error = Math.abs(evaluated[i] - verified[i]);
+			absoluteError += error;
+			maxError = Math.max(maxError, error);
+			relativeError += verified[i] == 0 ? 0 : error / verified[i];
+			verifiedBest = verified[i] < verified[verifiedBest] ? i : verifiedBest;
+			evaluatedBest = evaluated[i] < evaluated[evaluatedBest] ? i : evaluatedBest;
+		}
+		int options = Math.max(1, verified.length);
+		System.out.println(String.format("%s: %d options, mean absolute error %.4f, max error %.4f, mean relative error %.2f%%, "
+			+ "verified energy consumption of the option evaluated as best %.4f (lowest %.4f)",
+			name, verified.length, absoluteError / options, maxError, 100 * relativeError / options,
+			verified.length == 0 ? 0 : verified[evaluatedBest], verified.length == 0 ? 0 : verified[verifiedBest]));
+	}
+}
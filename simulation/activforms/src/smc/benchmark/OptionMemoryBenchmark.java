@@ -0,0 +1,111 @@
+package smc.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import mapek.AdaptationOption;
+import mapek.AdaptationSpace;
+import mapek.FeedbackLoop;
+import mapek.ManagedSystem;
+import mapek.Mote;
+
+/**
+ * Compares the memory of the adaptation options (shared topology with the power and distribution of the links per
+ * option) against the deep copies of the managed system which were composed before, and the time spent in garbage
+ * collection when all the options of a cycle are composed and rendered.
+ * Run from the simulation folder (next to SMCConfig.properties), with the distribution gap and the amount of cycles
+ * as optional arguments:
+ *   java -cp activforms/target/activforms-0.0.1-SNAPSHOT-spring-boot.jar smc.benchmark.OptionMemoryBenchmark 5 20
+ */
+public class OptionMemoryBenchmark {
+
+	static volatile long sink;
+
+	public static void main(String[] args) {
+		int gap = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int cycles = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		BenchmarkNetwork network = new BenchmarkNetwork();
+		AdaptationOption base = new AdaptationOption();
+		base.system = network.getSystem();
+		int amount = new AdaptationSpace(base, gap).size();
+
+		double copyBytes = measureMemory(() -> composeCopies(base, gap));
+		double compactBytes = measureMemory(() -> composeCompact(base, gap));
+		System.out.println(String.format("%d options per cycle (distribution gap %d)", amount, gap));
+		System.out.println(String.format("Deep copies:      %.0f bytes/option", copyBytes / amount));
+		System.out.println(String.format("Shared topology:  %.0f bytes/option (%.1fx less)", compactBytes / amount,
+			copyBytes / compactBytes));
+
+		double copyGC = measureGC(() -> composeCopies(base, gap), cycles);
+		double compactGC = measureGC(() -> composeCompact(base, gap), cycles);
+		System.out.println(String.format("Deep copies:      %.1f ms garbage collection/cycle", copyGC));
+		System.out.println(String.format("Shared topology:  %.1f ms garbage collection/cycle", compactGC));
+	}
+
+	/**
+	 * @return the options of a cycle as they were composed before: a deep copy of the managed system per option.
+	 */
+	static List<AdaptationOption> composeCopies(AdaptationOption base, int gap) {
+		AdaptationSpace space = new AdaptationSpace(base, gap);
+		List<AdaptationOption> options = new ArrayList<>(space.size());
+		for (AdaptationOption option : space) {
+			AdaptationOption copy = new AdaptationOption();
+			List<Mote> motes = new ArrayList<>();
+			for (Mote mote : option.system.motes.values()) {
+				motes.add(mote.getCopy());
+			}
+			copy.system = new ManagedSystem(motes);
+			options.add(copy);
+		}
+		return options;
+	}
+
+	static List<AdaptationOption> composeCompact(AdaptationOption base, int gap) {
+		AdaptationSpace space = new AdaptationSpace(base, gap);
+		for (AdaptationOption option : space) {
+			sink += option.overallIndex;
+		}
+		return space;
+	}
+
+	/**
+	 * @return the heap (in bytes) which is retained by the options.
+	 */
+	static double measureMemory(Supplier<List<AdaptationOption>> supplier) {
+		// Warm up, so the classes and the code of the supplier do not count
+		sink += supplier.get().size();
+
+		long before = usedMemory();
+		List<AdaptationOption> options = supplier.get();
+		long after = usedMemory();
+		sink += options.size();
+		return after - before;
+	}
+
+	/**
+	 * @return the time (in ms) spent in garbage collection per cycle, when all options of a cycle are rendered.
+	 */
+	static double measureGC(Supplier<List<AdaptationOption>> supplier, int cycles) {
+		StringBuilder cao = new StringBuilder();
+		usedMemory();
+		long start = FeedbackLoop.getCollectionTime();
+		for (int cycle = 0; cycle < cycles; cycle++) {
+			for (AdaptationOption option : supplier.get()) {
+				cao.setLength(0);
+				option.appendModelString(cao);
+				sink += cao.length();
+			}
+		}
+		return (FeedbackLoop.getCollectionTime() - start) / (double) cycles;
+	}
+
+	static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,154 @@
+package smc.benchmark;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mapek.AdaptationOption;
+import mapek.Environment;
+import mapek.Link;
+import mapek.Mote;
+import mapek.SNR;
+import mapek.TrafficProbability;
+import smc.ModelBuffer;
+import smc.ModelTemplate;
+import smc.SMCModel;
+import smc.SMCModelLoader;
+
+/**
+ * Compares rendering the quality models with precompiled templates against the string replacement
+ * which was used before (String.format per mote/link and a full copy of the model per option).
+ * Run from the simulation folder (next to SMCConfig.properties):
+ *   java -cp activforms/target/activforms-0.0.1-SNAPSHOT-spring-boot.jar smc.benchmark.RenderingBenchmark
+ */
+public class RenderingBenchmark {
+
+	static final int OPTIONS = 1000;
+	static final int WARMUP_ROUNDS = 20;
+	static final int MEASURED_ROUNDS = 20;
+
+	static volatile long sink;
+
+	public static void main(String[] args) {
+		BenchmarkNetwork network = new BenchmarkNetwork();
+		Environment environment = network.getEnvironment();
+		List<AdaptationOption> options = network.getOptions(OPTIONS, 20);
+		List<SMCModel> models = new SMCModelLoader().loadModels();
+
+		List<ModelTemplate> templates = new ArrayList<>();
+		for (SMCModel model : models) {
+			templates.add(new ModelTemplate(model));
+		}
+
+		// Both paths have to produce the same models
+		ModelBuffer buffer = new ModelBuffer();
+		byte[] env = environment.toModelString().getBytes(Charset.defaultCharset());
+		for (ModelTemplate template : templates) {
+			template.render(buffer, options.get(1).toModelString(), env);
+			byte[] legacy = renderLegacy(template.getModel(), options.get(1), environment).getBytes(Charset.defaultCharset());
+			if (!Arrays.equals(legacy, Arrays.copyOf(buffer.getBytes(), buffer.length()))) {
+				throw new RuntimeException("Rendered models differ for " + template.getModel().getKey());
+			}
+		}
+
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			legacyRound(models, options, environment);
+			templateRound(templates, options, environment);
+		}
+
+		long legacyTime = 0, templateTime = 0;
+		for (int round = 0; round < MEASURED_ROUNDS; round++) {
+			long start = System.nanoTime();
+			legacyRound(models, options, environment);
+			legacyTime += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			templateRound(templates, options, environment);
+			templateTime += System.nanoTime() - start;
+		}
+
+		long renders = (long) MEASURED_ROUNDS * OPTIONS;
+		System.out.println(String.format("String replacement: %d ns/option", legacyTime / renders));
+		System.out.println(String.format("Templates:          %d ns/option", templateTime / renders));
+	}
+
+	static void legacyRound(List<SMCModel> models, List<AdaptationOption> options, Environment environment) {
+		for (AdaptationOption option : options) {
+			for (SMCModel model : models) {
+				sink += renderLegacy(model, option, environment).getBytes(Charset.defaultCharset()).length;
+			}
+		}
+	}
+
+	static void templateRound(List<ModelTemplate> templates, List<AdaptationOption> options, Environment environment) {
+		ModelBuffer buffer = new ModelBuffer();
+		StringBuilder cao = new StringBuilder();
+		byte[] env = environment.toModelString().getBytes(Charset.defaultCharset());
+
+		for (AdaptationOption option : options) {
+			cao.setLength(0);
+			option.appendModelString(cao);
+			for (ModelTemplate template : templates) {
+				template.render(buffer, cao, env);
+				sink += buffer.length();
+			}
+		}
+	}
+
+
+	// The rendering as it was done before the templates were introduced
+
+	static String renderLegacy(SMCModel model, AdaptationOption option, Environment environment) {
+		String file = model.getModel();
+		String startText = "//&lt;Configuration&gt;";
+		String endText = "//&lt;/Configuration&gt;";
+		String newText = String.format("%s\n%s ", legacyOptionString(option), legacyEnvironmentString(environment));
+
+		int startIndex = file.indexOf(startText) + startText.length();
+		int endIndex = file.indexOf(endText);
+		String oldText = file.substring(startIndex, endIndex);
+		return file.replace(oldText, newText);
+	}
+
+	static String legacyOptionString(AdaptationOption option) {
+		StringBuilder string = new StringBuilder();
+		string.append("\nManagedSystem deltaIoT = {{");
+		for (int i : option.system.motes.keySet()) {
+			Mote mote = option.system.getMote(i);
+			string.append("\n{");
+			string.append(String.format("%d, %d, 11744, %d, %d,{", mote.getMoteId(), mote.getLoad(), mote.getLinks().size(),
+				mote.getQueueSize()));
+			for (Link link : mote.getLinks()) {
+				string.append(String.format("{%d, %d, %d, %d},", link.getSource(), link.getDestination(), link.getPower(),
+					link.getDistribution()));
+			}
+			if (mote.getLinks().size() == 1) {
+				string.append("{0, 0, 0, 0}");
+			} else {
+				string.setLength(string.length() - 1);
+			}
+			string.append("}}");
+			string.append(",");
+		}
+		string.setLength(string.length() - 1);
+		string.append("\n}};");
+		return string.toString();
+	}
+
+	static String legacyEnvironmentString(Environment environment) {
+		StringBuilder string = new StringBuilder();
+		string.append("Environment environment = {\n{");
+		for (SNR snr : environment.linksSNR) {
+			string.append(String.format("{%d, %d, %d},", snr.source, snr.destination, Math.round(snr.SNR)));
+		}
+		string.setLength(string.length() - 1);
+		string.append("},\n{");
+		for (TrafficProbability load : environment.motesLoad) {
+			string.append(String.format("{%d, %d},", load.moteId, Math.round(load.load)));
+		}
+		string.setLength(string.length() - 1);
+		string.append("}};");
+		return string.toString();
+	}
+}
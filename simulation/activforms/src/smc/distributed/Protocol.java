@@ -0,0 +1,162 @@
+package smc.distributed;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import mapek.AdaptationOption;
+import mapek.Environment;
+import mapek.Link;
+import mapek.ManagedSystem;
+import mapek.Mote;
+import mapek.Qualities;
+import mapek.SNR;
+import mapek.TrafficProbability;
+
+/**
+ * The framed protocol between the verification coordinator and its workers.
+ * Every frame is the length of its body (an int) followed by the body: the type of the message (a byte) and its fields.
+ * Worker to coordinator:
+ *  - HELLO: the amount of options the worker verifies at the same time
+ *  - HEARTBEAT: sent periodically, a worker which stays silent for too long is considered dead
+ *  - RESULT: task id, verified flag, verification time (ms) and the qualities of the option
+ * Coordinator to worker:
+ *  - ENVIRONMENT: environment id and the environment, used by the tasks which follow it
+ *  - TASK: task id, environment id, time left before the deadline (ms) and the adaptation option
+ *  - CANCEL: environment id, the worker stops the tasks of that environment (their results are no longer needed)
+ */
+final class Protocol {
+
+	static final byte HELLO = 1;
+	static final byte HEARTBEAT = 2;
+	static final byte RESULT = 3;
+	static final byte ENVIRONMENT = 4;
+	static final byte TASK = 5;
+	static final byte CANCEL = 6;
+
+	// Upper bound on the size of a frame, protects against reading garbage from a wrong peer
+	private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+	private Protocol() {}
+
+	/**
+	 * Body of a frame which is being written, sent with {@link #send(DataOutputStream)}.
+	 */
+	static class Frame {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		final DataOutputStream body = new DataOutputStream(bytes);
+
+		Frame(byte type) throws IOException {
+			body.writeByte(type);
+		}
+
+		/**
+		 * Writes the frame to the stream (whole frames are written under the lock of the stream).
+		 */
+		void send(DataOutputStream out) throws IOException {
+			synchronized (out) {
+				out.writeInt(bytes.size());
+				bytes.writeTo(out);
+				out.flush();
+			}
+		}
+	}
+
+	/**
+	 * @return the body of the next frame, starting with its type.
+	 */
+	static DataInputStream receive(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		if (size <= 0 || size > MAX_FRAME_SIZE) {
+			throw new IOException(String.format("Invalid frame size %d.", size));
+		}
+		byte[] body = new byte[size];
+		in.readFully(body);
+		return new DataInputStream(new ByteArrayInputStream(body));
+	}
+
+	static void writeEnvironment(DataOutputStream out, Environment environment) throws IOException {
+		out.writeInt(environment.linksSNR.size());
+		for (SNR snr : environment.linksSNR) {
+			out.writeInt(snr.source);
+			out.writeInt(snr.destination);
+			out.writeDouble(snr.SNR);
+		}
+		out.writeInt(environment.motesLoad.size());
+		for (TrafficProbability load : environment.motesLoad) {
+			out.writeInt(load.moteId);
+			out.writeDouble(load.load);
+		}
+	}
+
+	static Environment readEnvironment(DataInputStream in) throws IOException {
+		Environment environment = new Environment();
+		int links = in.readInt();
+		for (int i = 0; i < links; i++) {
+			environment.linksSNR.add(new SNR(in.readInt(), in.readInt(), in.readDouble()));
+		}
+		int motes = in.readInt();
+		for (int i = 0; i < motes; i++) {
+			environment.motesLoad.add(new TrafficProbability(in.readInt(), in.readDouble()));
+		}
+		return environment;
+	}
+
+	/**
+	 * Writes the managed system of the option, the motes in their order (which is the order of the quality models).
+	 */
+	static void writeOption(DataOutputStream out, AdaptationOption option) throws IOException {
+		out.writeInt(option.overallIndex);
+		out.writeInt(option.system.motes.size());
+		for (Mote mote : option.system.motes.values()) {
+			out.writeInt(mote.getMoteId());
+			out.writeDouble(mote.getEnergyLevel());
+			out.writeInt(mote.getLoad());
+			out.writeInt(mote.getQueueSize());
+			out.writeInt(mote.getLinks().size());
+			for (Link link : mote.getLinks()) {
+				out.writeInt(link.getSource());
+				out.writeInt(link.getDestination());
+				out.writeInt(link.getPower());
+				out.writeInt(link.getDistribution());
+			}
+		}
+	}
+
+	static AdaptationOption readOption(DataInputStream in) throws IOException {
+		AdaptationOption option = new AdaptationOption();
+		option.overallIndex = in.readInt();
+		int amtMotes = in.readInt();
+		List<Mote> motes = new ArrayList<>(amtMotes);
+		for (int i = 0; i < amtMotes; i++) {
+			Mote mote = new Mote(in.readInt(), in.readDouble(), in.readInt(), in.readInt());
+			int links = in.readInt();
+			for (int j = 0; j < links; j++) {
+				mote.getLinks().add(new Link(in.readInt(), in.readInt(), in.readInt(), in.readInt()));
+			}
+			motes.add(mote);
+		}
+		option.system = new ManagedSystem(motes);
+		return option;
+	}
+
+	static void writeQualities(DataOutputStream out, Qualities qualities) throws IOException {
+		out.writeDouble(qualities.packetLoss);
+		out.writeDouble(qualities.energyConsumption);
+		out.writeDouble(qualities.latency);
+		// -1 if the packet loss was estimated instead of tested against its goal
+		out.writeByte(qualities.packetLossGoalMet == null ? -1 : qualities.packetLossGoalMet ? 1 : 0);
+	}
+
+	static void readQualities(DataInputStream in, Qualities qualities) throws IOException {
+		qualities.packetLoss = in.readDouble();
+		qualities.energyConsumption = in.readDouble();
+		qualities.latency = in.readDouble();
+		byte goalMet = in.readByte();
+		qualities.packetLossGoalMet = goalMet < 0 ? null : goalMet == 1;
+	}
+}
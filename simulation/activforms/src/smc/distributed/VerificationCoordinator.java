@@ -0,0 +1,495 @@
+package smc.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import mapek.AdaptationOption;
+import mapek.Environment;
+import mapek.Qualities;
+import smc.Deadline;
+import smc.VerificationEngine;
+import util.ConfigLoader;
+
+/**
+ * Verification engine which fans the verification of the adaptation options out to verification workers
+ * (see {@link VerificationWorker}), which can run on this machine or on other nodes. Workers connect to the
+ * coordinator over TCP (see {@link Protocol}) and verify every option they get with their own model checker.
+ *  - Every option is a task, the tasks of a cycle are spread round robin over the queues of the workers.
+ *    A worker gets tasks from its own queue as long as it has free capacity; once that queue is empty, it steals
+ *    the tasks at the back of the longest queue of the other workers.
+ *  - Workers send a heartbeat periodically. A worker which stays silent for longer than the heartbeat timeout
+ *    (or of which the connection breaks) is dropped, and its queued and running tasks are dispatched again.
+ *  - Results are published in the verification results of the options as they arrive, until the deadline expires.
+ *    The tasks of the cycle which are still queued or running are then dropped, and the workers are told to stop
+ *    the ones they are running, so they do not hold up the next cycle.
+ */
+public class VerificationCoordinator implements VerificationEngine {
+
+	private final ServerSocket serverSocket;
+	private final int heartbeatTimeout;
+	private final int connectTimeout;
+
+	// Workers started by the coordinator itself, on this machine
+	private final List<Process> localWorkers = new ArrayList<>();
+
+	// Guards the workers, their queues and the tasks which could not be assigned to any worker
+	private final Object lock = new Object();
+	private final List<WorkerConnection> workers = new ArrayList<>();
+	private final Deque<Task> unassigned = new ArrayDeque<>();
+	private int nextWorker = 0;
+
+	private final AtomicLong taskIds = new AtomicLong();
+	private final AtomicLong environmentIds = new AtomicLong();
+
+	private final AtomicLong dispatchedTasks = new AtomicLong();
+	private final AtomicLong stolenTasks = new AtomicLong();
+	private final AtomicLong redispatchedTasks = new AtomicLong();
+	private final AtomicLong lostWorkers = new AtomicLong();
+	private final AtomicLong connectedWorkers = new AtomicLong();
+
+	public VerificationCoordinator() {
+		ConfigLoader config = ConfigLoader.getInstance();
+		int port = Integer.parseInt(config.getProperty("distributed.port", "0").trim());
+		heartbeatTimeout = Integer.parseInt(config.getProperty("distributed.heartbeatTimeout", "10").trim());
+		connectTimeout = Integer.parseInt(config.getProperty("distributed.connectTimeout", "60").trim());
+
+		try {
+			serverSocket = new ServerSocket(port);
+		} catch (IOException e) {
+			throw new RuntimeException(String.format("Could not listen for verification workers on port %d.", port), e);
+		}
+
+		Thread acceptor = new Thread(this::acceptWorkers, "verification-coordinator");
+		acceptor.setDaemon(true);
+		acceptor.start();
+
+		int amtLocalWorkers = Integer.parseInt(config.getProperty("distributed.localWorkers", "0").trim());
+		for (int i = 0; i < amtLocalWorkers; i++) {
+			startLocalWorker(i);
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> localWorkers.forEach(Process::destroy)));
+	}
+
+	/**
+	 * @return the port on which the coordinator accepts workers.
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Starts a worker process with the class path of this JVM, in the same working directory (and so with the
+	 * same properties file and quality models). Its output is appended to activforms/log/verification-worker-i.log.
+	 */
+	private void startLocalWorker(int index) {
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		File log = Paths.get(System.getProperty("user.dir"), "activforms", "log", "verification-worker-" + index + ".log").toFile();
+		log.getParentFile().mkdirs();
+
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+			VerificationWorker.class.getName(), "localhost", Integer.toString(getPort()));
+		builder.redirectErrorStream(true);
+		builder.redirectOutput(ProcessBuilder.Redirect.appendTo(log));
+		try {
+			localWorkers.add(builder.start());
+		} catch (IOException e) {
+			throw new RuntimeException(String.format("Could not start local verification worker %d.", index), e);
+		}
+	}
+
+	private void acceptWorkers() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				// Reads time out once the heartbeats of the worker stop
+				socket.setSoTimeout(heartbeatTimeout * 1000);
+
+				WorkerConnection worker = new WorkerConnection(socket);
+				Thread reader = new Thread(() -> readResults(worker), "verification-coordinator-" + socket.getRemoteSocketAddress());
+				reader.setDaemon(true);
+				reader.start();
+			} catch (IOException e) {
+				if (!serverSocket.isClosed()) {
+					e.printStackTrace(System.out);
+				}
+			}
+		}
+	}
+
+	@Override
+	public long[] checkCAOs(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline) {
+		return verify(adaptationOptions, environment, deadline, null);
+	}
+
+	@Override
+	public long[] checkCAOs(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline,
+			Predicate<AdaptationOption> listener) {
+		return verify(adaptationOptions, environment, deadline, listener);
+	}
+
+	private long[] verify(List<AdaptationOption> adaptationOptions, Environment environment, Deadline deadline,
+			Predicate<AdaptationOption> listener) {
+		Cycle cycle = new Cycle(environmentIds.incrementAndGet(), environment, deadline, listener, adaptationOptions.size());
+		if (adaptationOptions.isEmpty()) {
+			return cycle.verifTimes;
+		}
+
+		synchronized (lock) {
+			for (int i = 0; i < adaptationOptions.size(); i++) {
+				assign(new Task(taskIds.incrementAndGet(), cycle, i, adaptationOptions.get(i)));
+			}
+		}
+		dispatchAll();
+
+		try {
+			long withoutWorkers = 0;
+			while (!cycle.done.await(Math.min(1000, deadline.remaining(TimeUnit.MILLISECONDS)), TimeUnit.MILLISECONDS)) {
+				if (deadline.hasExpired()) {
+					break;
+				}
+				// The tasks wait for a worker to (re)connect, but not forever
+				withoutWorkers = hasWorkers() ? 0 : withoutWorkers + 1;
+				if (withoutWorkers > connectTimeout) {
+					throw new RuntimeException(String.format("No verification worker connected to port %d for %d seconds.",
+						getPort(), connectTimeout));
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			// Results which still arrive are ignored
+			cycle.close();
+			cancel(cycle);
+		}
+		return cycle.verifTimes;
+	}
+
+	/**
+	 * Drops the tasks of the closed cycle from the queues and the tasks in flight, and tells the workers which are
+	 * running some of them to stop those.
+	 */
+	private void cancel(Cycle cycle) {
+		List<WorkerConnection> running = new ArrayList<>();
+		synchronized (lock) {
+			unassigned.removeIf(task -> task.cycle == cycle);
+			for (WorkerConnection worker : workers) {
+				worker.queue.removeIf(task -> task.cycle == cycle);
+				if (worker.inFlight.values().removeIf(task -> task.cycle == cycle)) {
+					running.add(worker);
+				}
+			}
+		}
+
+		for (WorkerConnection worker : running) {
+			try {
+				worker.cancel(cycle);
+			} catch (IOException e) {
+				workerLost(worker);
+			}
+		}
+	}
+
+	private boolean hasWorkers() {
+		synchronized (lock) {
+			return !workers.isEmpty();
+		}
+	}
+
+	/**
+	 * Puts the task in the queue of the next worker (round robin), or with the unassigned tasks if there are no workers.
+	 */
+	private void assign(Task task) {
+		if (workers.isEmpty()) {
+			unassigned.addLast(task);
+		} else {
+			workers.get(nextWorker++ % workers.size()).queue.addLast(task);
+		}
+	}
+
+	private void dispatchAll() {
+		List<WorkerConnection> current;
+		synchronized (lock) {
+			current = new ArrayList<>(workers);
+		}
+		for (WorkerConnection worker : current) {
+			dispatch(worker);
+		}
+	}
+
+	/**
+	 * Sends tasks to the worker until its capacity is used: from its own queue first, then the unassigned tasks
+	 * and finally the tasks at the back of the longest queue of the other workers.
+	 */
+	private void dispatch(WorkerConnection worker) {
+		List<Task> tasks = new ArrayList<>();
+		synchronized (lock) {
+			while (worker.alive && worker.inFlight.size() < worker.capacity) {
+				Task task = worker.queue.pollFirst();
+				if (task == null) {
+					task = unassigned.pollFirst();
+				}
+				if (task == null) {
+					task = steal(worker);
+				}
+				if (task == null) {
+					break;
+				}
+				if (!task.cycle.open.get()) {
+					continue;
+				}
+				worker.inFlight.put(task.id, task);
+				tasks.add(task);
+			}
+		}
+
+		try {
+			for (Task task : tasks) {
+				worker.send(task);
+				dispatchedTasks.incrementAndGet();
+			}
+		} catch (IOException e) {
+			workerLost(worker);
+		}
+	}
+
+	private Task steal(WorkerConnection thief) {
+		WorkerConnection victim = null;
+		for (WorkerConnection worker : workers) {
+			if (worker != thief && !worker.queue.isEmpty() && (victim == null || worker.queue.size() > victim.queue.size())) {
+				victim = worker;
+			}
+		}
+		if (victim == null) {
+			return null;
+		}
+		stolenTasks.incrementAndGet();
+		return victim.queue.pollLast();
+	}
+
+	/**
+	 * Reads the frames of the worker until its connection breaks or its heartbeats stop.
+	 */
+	private void readResults(WorkerConnection worker) {
+		try {
+			DataInputStream hello = Protocol.receive(worker.in);
+			if (hello.readByte() != Protocol.HELLO) {
+				throw new IOException("Expected a hello from the verification worker.");
+			}
+			worker.capacity = Math.max(1, hello.readInt());
+
+			synchronized (lock) {
+				workers.add(worker);
+				worker.alive = true;
+			}
+			connectedWorkers.incrementAndGet();
+			dispatch(worker);
+
+			while (true) {
+				DataInputStream frame = Protocol.receive(worker.in);
+				byte type = frame.readByte();
+				if (type == Protocol.RESULT) {
+					handleResult(worker, frame);
+				} else if (type != Protocol.HEARTBEAT) {
+					throw new IOException(String.format("Unexpected message %d from the verification worker.", type));
+				}
+			}
+		} catch (IOException e) {
+			System.out.println(String.format("Verification worker %s lost: %s", worker.socket.getRemoteSocketAddress(), e));
+			workerLost(worker);
+		}
+	}
+
+	private void handleResult(WorkerConnection worker, DataInputStream frame) throws IOException {
+		long taskId = frame.readLong();
+		boolean verified = frame.readBoolean();
+		long verifTime = frame.readLong();
+		Qualities qualities = new Qualities();
+		Protocol.readQualities(frame, qualities);
+
+		Task task;
+		synchronized (lock) {
+			task = worker.inFlight.remove(taskId);
+		}
+		dispatch(worker);
+
+		if (task != null) {
+			task.cycle.complete(task, verified, verifTime, qualities);
+		}
+	}
+
+	/**
+	 * Drops the worker and dispatches its tasks again to the other workers.
+	 */
+	private void workerLost(WorkerConnection worker) {
+		int redispatched = 0;
+		synchronized (lock) {
+			boolean registered = workers.remove(worker);
+			worker.alive = false;
+
+			List<Task> orphans = new ArrayList<>(worker.inFlight.values());
+			orphans.addAll(worker.queue);
+			worker.inFlight.clear();
+			worker.queue.clear();
+			for (Task task : orphans) {
+				if (task.cycle.open.get()) {
+					assign(task);
+					redispatched++;
+				}
+			}
+			if (registered) {
+				lostWorkers.incrementAndGet();
+			}
+		}
+		redispatchedTasks.addAndGet(redispatched);
+		try {
+			worker.socket.close();
+		} catch (IOException e) {
+			// Already broken
+		}
+		dispatchAll();
+	}
+
+	@Override
+	public void printStatistics() {
+		System.out.println(String.format(
+			"Distributed verification: %d tasks dispatched to %d workers, %d stolen, %d dispatched again (%d workers lost)",
+			dispatchedTasks.get(), connectedWorkers.get(), stolenTasks.get(), redispatchedTasks.get(), lostWorkers.get()));
+	}
+
+	/**
+	 * The verification of the options of a single call, of which the results are published while it is open.
+	 */
+	private static class Cycle {
+		final long environmentId;
+		final Environment environment;
+		final Deadline deadline;
+		final Predicate<AdaptationOption> listener;
+		final long[] verifTimes;
+
+		final AtomicBoolean open = new AtomicBoolean(true);
+		final AtomicInteger pending;
+		final CountDownLatch done = new CountDownLatch(1);
+
+		Cycle(long environmentId, Environment environment, Deadline deadline, Predicate<AdaptationOption> listener,
+				int amtOptions) {
+			this.environmentId = environmentId;
+			this.environment = environment;
+			this.deadline = deadline;
+			this.listener = listener;
+			this.verifTimes = new long[amtOptions];
+			this.pending = new AtomicInteger(amtOptions);
+		}
+
+		void complete(Task task, boolean verified, long verifTime, Qualities qualities) {
+			synchronized (open) {
+				if (open.get() && verified) {
+					AdaptationOption option = task.option;
+					option.verificationResults.packetLoss = qualities.packetLoss;
+					option.verificationResults.energyConsumption = qualities.energyConsumption;
+					option.verificationResults.latency = qualities.latency;
+					option.verificationResults.packetLossGoalMet = qualities.packetLossGoalMet;
+					option.isVerified = true;
+					verifTimes[task.index] = verifTime;
+
+					if (listener != null && !listener.test(option)) {
+						close();
+					}
+				}
+			}
+			if (pending.decrementAndGet() == 0) {
+				done.countDown();
+			}
+		}
+
+		void close() {
+			synchronized (open) {
+				open.set(false);
+			}
+			done.countDown();
+		}
+	}
+
+	private static class Task {
+		final long id;
+		final Cycle cycle;
+		final int index;
+		final AdaptationOption option;
+
+		Task(long id, Cycle cycle, int index, AdaptationOption option) {
+			this.id = id;
+			this.cycle = cycle;
+			this.index = index;
+			this.option = option;
+		}
+	}
+
+	/**
+	 * The coordinator side of the connection with a worker, with the tasks queued for it and the ones it is running.
+	 */
+	private static class WorkerConnection {
+		final Socket socket;
+		final DataInputStream in;
+		final DataOutputStream out;
+
+		// Guarded by the lock of the coordinator
+		final Deque<Task> queue = new ArrayDeque<>();
+		final Map<Long, Task> inFlight = new HashMap<>();
+		int capacity = 1;
+		boolean alive = false;
+
+		// The environment the worker knows, guarded by the output stream
+		long environmentId = 0;
+
+		WorkerConnection(Socket socket) throws IOException {
+			this.socket = socket;
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+		void send(Task task) throws IOException {
+			Cycle cycle = task.cycle;
+			synchronized (out) {
+				if (environmentId != cycle.environmentId) {
+					Protocol.Frame frame = new Protocol.Frame(Protocol.ENVIRONMENT);
+					frame.body.writeLong(cycle.environmentId);
+					Protocol.writeEnvironment(frame.body, cycle.environment);
+					frame.send(out);
+					environmentId = cycle.environmentId;
+				}
+
+				Protocol.Frame frame = new Protocol.Frame(Protocol.TASK);
+				frame.body.writeLong(task.id);
+				frame.body.writeLong(cycle.environmentId);
+				frame.body.writeLong(cycle.deadline.isBounded() ? Math.max(1, cycle.deadline.remaining(TimeUnit.MILLISECONDS)) : -1);
+				Protocol.writeOption(frame.body, task.option);
+				frame.send(out);
+			}
+		}
+
+		void cancel(Cycle cycle) throws IOException {
+			Protocol.Frame frame = new Protocol.Frame(Protocol.CANCEL);
+			frame.body.writeLong(cycle.environmentId);
+			frame.send(out);
+		}
+	}
+}
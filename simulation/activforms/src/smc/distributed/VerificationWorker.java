@@ -0,0 +1,170 @@
+package smc.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import mapek.AdaptationOption;
+import mapek.Environment;
+import smc.Deadline;
+import smc.SMCChecker;
+import util.ConfigLoader;
+
+/**
+ * Verification worker of the distributed verification engine (see {@link VerificationCoordinator}).
+ * The worker connects to the coordinator and verifies the options it gets with its own model checker, using the
+ * properties file and the quality models in its working directory. It verifies as many options at the same time as
+ * it has verification threads, and stops once the connection with the coordinator is closed. Tasks of which the
+ * coordinator no longer needs the results are interrupted, which makes the model checker stop their verifiers.
+ * Usage: java -cp &lt;class path&gt; smc.distributed.VerificationWorker &lt;coordinator host&gt; &lt;port&gt;
+ */
+public class VerificationWorker {
+
+	private final String host;
+	private final int port;
+
+	private final SMCChecker checker = new SMCChecker();
+	private final int capacity = ConfigLoader.getInstance().getVerificationThreads();
+	private final int heartbeatInterval =
+		Integer.parseInt(ConfigLoader.getInstance().getProperty("distributed.heartbeatInterval", "1").trim());
+
+	// The environment of the tasks which follow, as last sent by the coordinator
+	private long environmentId = -1;
+	private Environment environment;
+
+	// The tasks which are queued or running, keyed on their id
+	private final Map<Long, RunningTask> running = new ConcurrentHashMap<>();
+
+	public VerificationWorker(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: VerificationWorker <coordinator host> <port>");
+			System.exit(1);
+		}
+		new VerificationWorker(args[0], Integer.parseInt(args[1])).run();
+		System.exit(0);
+	}
+
+	public void run() throws IOException {
+		ExecutorService tasks = Executors.newFixedThreadPool(capacity, runnable -> {
+			Thread thread = new Thread(runnable, "verification-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "verification-worker-heartbeat");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try (Socket socket = new Socket(host, port)) {
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+			Protocol.Frame hello = new Protocol.Frame(Protocol.HELLO);
+			hello.body.writeInt(capacity);
+			hello.send(out);
+			System.out.println(String.format("Verification worker connected to %s:%d (%d threads)", host, port, capacity));
+
+			heartbeats.scheduleAtFixedRate(() -> {
+				try {
+					new Protocol.Frame(Protocol.HEARTBEAT).send(out);
+				} catch (IOException e) {
+					// The connection is broken, the reader notices it as well
+				}
+			}, heartbeatInterval, heartbeatInterval, TimeUnit.SECONDS);
+
+			while (true) {
+				DataInputStream frame;
+				try {
+					frame = Protocol.receive(in);
+				} catch (EOFException e) {
+					// The coordinator closed the connection
+					break;
+				}
+
+				byte type = frame.readByte();
+				if (type == Protocol.ENVIRONMENT) {
+					environmentId = frame.readLong();
+					environment = Protocol.readEnvironment(frame);
+				} else if (type == Protocol.TASK) {
+					long taskId = frame.readLong();
+					if (frame.readLong() != environmentId) {
+						throw new IOException(String.format("Task %d was sent without its environment.", taskId));
+					}
+					long remaining = frame.readLong();
+					AdaptationOption option = Protocol.readOption(frame);
+					Environment taskEnvironment = environment;
+					Deadline deadline = remaining < 0 ? Deadline.NONE : Deadline.after(remaining, TimeUnit.MILLISECONDS);
+					FutureTask<Void> task = new FutureTask<>(() -> verify(taskId, option, taskEnvironment, deadline, out), null);
+					running.put(taskId, new RunningTask(environmentId, task));
+					tasks.execute(task);
+				} else if (type == Protocol.CANCEL) {
+					long cancelled = frame.readLong();
+					running.values().removeIf(task -> task.environmentId == cancelled && task.future.cancel(true));
+				} else {
+					throw new IOException(String.format("Unexpected message %d from the coordinator.", type));
+				}
+			}
+		} finally {
+			heartbeats.shutdownNow();
+			tasks.shutdownNow();
+			checker.printStatistics();
+		}
+	}
+
+	private void verify(long taskId, AdaptationOption option, Environment environment, Deadline deadline,
+			DataOutputStream out) {
+		long verifTime = 0;
+		try {
+			verifTime = checker.checkCAOs(Collections.singletonList(option), environment, deadline)[0];
+		} catch (RuntimeException e) {
+			// Reported as not verified, so the coordinator does not wait for the option
+			e.printStackTrace(System.out);
+		} finally {
+			running.remove(taskId);
+		}
+		if (Thread.currentThread().isInterrupted()) {
+			// Cancelled by the coordinator, which dropped the task
+			return;
+		}
+		try {
+			Protocol.Frame result = new Protocol.Frame(Protocol.RESULT);
+			result.body.writeLong(taskId);
+			result.body.writeBoolean(option.isVerified);
+			result.body.writeLong(verifTime);
+			Protocol.writeQualities(result.body, option.verificationResults);
+			result.send(out);
+		} catch (IOException e) {
+			// The coordinator is gone (or dropped this worker) and dispatches the task again
+		}
+	}
+
+
+	private static class RunningTask {
+		final long environmentId;
+		final FutureTask<Void> future;
+
+		RunningTask(long environmentId, FutureTask<Void> future) {
+			this.environmentId = environmentId;
+			this.future = future;
+		}
+	}
+}
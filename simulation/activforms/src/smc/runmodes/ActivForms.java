@@ -17,6 +17,8 @@ import mapek.Link;
 import mapek.Mote;
 import mapek.SNR;
 import mapek.TrafficProbability;
+import smc.Deadline;
+import util.ConfigLoader;
 
 
 public class ActivForms extends SMCConnector {
@@ -27,20 +29,10 @@ public class ActivForms extends SMCConnector {
 	public void startVerification() {
 		System.out.print(";" + adaptationOptions.size());
 
-		Long[] verifTimes = new Long[adaptationOptions.size()]; 
-		int index = 0;
-
 		// Check all the adaptation options with activFORMS (and keep track of the verification time of each option)
-		for (AdaptationOption adaptationOption : adaptationOptions) {
-			Long startTime = System.currentTimeMillis();
-
-			smcChecker.checkCAO(adaptationOption.toModelString(), environment.toModelString(),
-				adaptationOption.verificationResults);
-			adaptationOption.isVerified = true;
-
-			verifTimes[index] = System.currentTimeMillis() - startTime;
-			index++;
-		}
+		long[] verifTimes = ConfigLoader.getInstance().isScreeningEnabled() ?
+			verificationEngine.checkCAOsWithScreening(adaptationOptions, environment, Deadline.NONE, getPlanningGoals()) :
+			verificationEngine.checkCAOs(adaptationOptions, environment, Deadline.NONE);
 
 
 		storeAllFeaturesAndTargets(adaptationOptions, environment, cycles, verifTimes);
@@ -48,7 +40,7 @@ public class ActivForms extends SMCConnector {
 	}
 
 
-	private void storeAllFeaturesAndTargets(List<AdaptationOption> adaptationOptions, Environment env, int cycle, Long[] verifTimes) {
+	private void storeAllFeaturesAndTargets(List<AdaptationOption> adaptationOptions, Environment env, int cycle, long[] verifTimes) {
 		// Store the features and the targets in their respective files
 		File feature_selection = new File(
 			Paths.get(System.getProperty("user.dir"), "activforms", "log", "dataset_with_all_features" + cycle + ".json").toString());
@@ -121,7 +113,7 @@ public class ActivForms extends SMCConnector {
 				root.getJSONArray("target_regression_energyconsumption").put(option.verificationResults.energyConsumption);
 			}
 
-			for (Long verifTime : verifTimes) {
+			for (long verifTime : verifTimes) {
 				root.getJSONArray("verification_times").put(verifTime);
 			}
 
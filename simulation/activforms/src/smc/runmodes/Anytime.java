@@ -0,0 +1,169 @@
+package smc.runmodes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mapek.AdaptationOption;
+import mapek.Goal;
+import smc.Deadline;
+import smc.QualityEvaluator;
+import smc.SMCModel;
+import smc.SMCModelLoader;
+import util.ConfigLoader;
+
+/**
+ * Anytime verification: the options are verified in the order of their predicted value, and the verification stops
+ * as soon as the best verified option (the incumbent) can no longer be beaten by the options which are left, or once
+ * the time cap expires.
+ * The packet loss and energy consumption of the options are predicted numerically (see {@link QualityEvaluator}).
+ * The options of which the predicted packet loss meets the goal within the margin are the candidates, they are
+ * verified first in the order of their predicted energy consumption, followed by the other options. The incumbent
+ * is the verified option which meets the goals with the lowest energy consumption (like the planner picks it); the
+ * remaining candidates cannot beat it once their predicted energy consumption minus the margin is not lower.
+ * The failsafe option (see {@link SMCConnector#setFailsafeOption}) is verified before all the others, regardless of
+ * the time cap, so the planner always has an option to fall back on.
+ */
+public class Anytime extends SMCConnector {
+
+	private final QualityEvaluator packetLossPredictor;
+	private final QualityEvaluator energyPredictor;
+
+	// Errors of the predictions which are taken into account (in the unit of the quality)
+	private final double packetLossMargin;
+	private final double energyMargin;
+
+	public Anytime() {
+		QualityEvaluator packetLoss = null, energy = null;
+		for (SMCModel model : new SMCModelLoader().loadModels()) {
+			if (model.getKey().equals("packetLoss")) {
+				packetLoss = QualityEvaluator.create(model);
+			} else if (model.getKey().equals("energyConsumption")) {
+				energy = QualityEvaluator.create(model);
+			}
+		}
+		if (packetLoss == null || energy == null) {
+			throw new RuntimeException("The anytime run mode needs the packet loss and energy consumption models.");
+		}
+		packetLossPredictor = packetLoss;
+		energyPredictor = energy;
+
+		ConfigLoader config = ConfigLoader.getInstance();
+		packetLossMargin = Double.parseDouble(config.getProperty("anytime.packetLossMargin", "2").trim());
+		energyMargin = Double.parseDouble(config.getProperty("anytime.energyMargin", "0.1").trim());
+	}
+
+	@Override
+	Deadline createCycleDeadline() {
+		return getTimeCapDeadline();
+	}
+
+	@Override
+	public void startVerification() {
+		Deadline deadline = getCycleDeadline();
+		System.out.print(";" + adaptationOptions.size());
+
+		double[] packetLoss = packetLossPredictor.evaluate(adaptationOptions, environment);
+		double[] energy = energyPredictor.evaluate(adaptationOptions, environment);
+
+		Goal packetLossGoal = goals.getPacketLossGoal();
+		List<Integer> candidates = new ArrayList<>();
+		List<Integer> others = new ArrayList<>();
+		for (int i = 0; i < adaptationOptions.size(); i++) {
+			if (adaptationOptions.get(i) == failsafeOption) {
+				continue;
+			}
+			if (packetLossGoal.evaluate(packetLoss[i] - packetLossMargin)) {
+				candidates.add(i);
+			} else {
+				others.add(i);
+			}
+		}
+		Comparator<Integer> byEnergy = Comparator.comparingDouble(i -> energy[i]);
+		candidates.sort(byEnergy);
+		others.sort(byEnergy);
+
+		Incumbent incumbent = new Incumbent(candidates, energy);
+
+		if (failsafeOption != null) {
+			verificationEngine.checkCAOs(Collections.singletonList(failsafeOption), environment, Deadline.NONE);
+			incumbent.offer(failsafeOption);
+		}
+
+		if (!incumbent.isFinal()) {
+			List<AdaptationOption> ordered = new ArrayList<>(candidates.size() + others.size());
+			for (int i : candidates) {
+				ordered.add(adaptationOptions.get(i));
+			}
+			for (int i : others) {
+				ordered.add(adaptationOptions.get(i));
+			}
+			verificationEngine.checkCAOs(ordered, environment, deadline, option -> {
+				incumbent.offer(option);
+				return !incumbent.isFinal();
+			});
+		}
+
+		System.out.print(";" + adaptationOptions.stream().filter(o -> o.isVerified).count());
+	}
+
+	/**
+	 * The best verified option so far, and the candidates which are not verified yet.
+	 */
+	private class Incumbent {
+		private final List<Integer> candidates;
+		private final double[] predictedEnergy;
+		// Position of each candidate in the (sorted) list of candidates
+		private final Map<AdaptationOption, Integer> positions = new IdentityHashMap<>();
+		private final boolean[] verified;
+		// The first candidate which is not verified yet
+		private int next = 0;
+
+		private AdaptationOption best = null;
+
+		Incumbent(List<Integer> candidates, double[] predictedEnergy) {
+			this.candidates = candidates;
+			this.predictedEnergy = predictedEnergy;
+			verified = new boolean[candidates.size()];
+			for (int i = 0; i < candidates.size(); i++) {
+				positions.put(adaptationOptions.get(candidates.get(i)), i);
+			}
+		}
+
+		void offer(AdaptationOption option) {
+			Integer position = positions.get(option);
+			if (position != null) {
+				verified[position] = true;
+				while (next < verified.length && verified[next]) {
+					next++;
+				}
+			}
+			if (!option.isVerified) {
+				return;
+			}
+
+			for (Goal goal : getPlanningGoals()) {
+				if (!goals.meetsGoal(goal, option.verificationResults)) {
+					return;
+				}
+			}
+			if (goals.optimizeGoalEnergyConsumption(best, option)) {
+				best = option;
+			}
+		}
+
+		/**
+		 * @return true if none of the options which are left can beat the incumbent.
+		 */
+		boolean isFinal() {
+			if (best == null) {
+				return false;
+			}
+			return next == candidates.size()
+				|| predictedEnergy[candidates.get(next)] - energyMargin >= best.verificationResults.energyConsumption;
+		}
+	}
+}
@@ -12,6 +12,7 @@ import org.json.JSONObject;
 import mapek.AdaptationOption;
 import mapek.Goal;
 import mapek.Goals;
+import smc.Deadline;
 import util.ConfigLoader;
 
 
@@ -68,12 +69,11 @@ public class Comparison extends SMCConnector {
 		int timeCap = ConfigLoader.getInstance().getTimeCap();
 		List<Long> verifTimes = new ArrayList<>();
 
+		for (long verifTime : verificationEngine.checkCAOs(adaptationOptions, environment, Deadline.NONE)) {
+			verifTimes.add(verifTime);
+		}
+
 		for (AdaptationOption adaptationOption : adaptationOptions) {
-			long startTime = System.currentTimeMillis();
-			smcChecker.checkCAO(adaptationOption.toModelString(), environment.toModelString(),
-				adaptationOption.verificationResults);
-			adaptationOption.isVerified = true;
-			verifTimes.add(System.currentTimeMillis() - startTime);
 
 			adjInspection.getJSONArray("packetLoss").put(adaptationOption.verificationResults.packetLoss);
 			adjInspection.getJSONArray("energyConsumption").put(adaptationOption.verificationResults.energyConsumption);
@@ -234,12 +234,11 @@ public class Comparison extends SMCConnector {
 
 		List<Long> verifTimes = new ArrayList<>();
 		// Check all the adaptation options with activFORMS
+		for (long verifTime : verificationEngine.checkCAOs(adaptationOptions, environment, Deadline.NONE)) {
+			verifTimes.add(verifTime);
+		}
+
 		for (AdaptationOption adaptationOption : adaptationOptions) {
-			Long startTime = System.currentTimeMillis();
-			smcChecker.checkCAO(adaptationOption.toModelString(), environment.toModelString(),
-				adaptationOption.verificationResults);
-			adaptationOption.isVerified = true;
-			verifTimes.add(System.currentTimeMillis() - startTime);
 
 			adjInspection.getJSONArray("packetLoss").put(adaptationOption.verificationResults.packetLoss);
 			adjInspection.getJSONArray("energyConsumption").put(adaptationOption.verificationResults.energyConsumption);
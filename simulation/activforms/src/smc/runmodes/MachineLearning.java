@@ -4,8 +4,6 @@ package smc.runmodes;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.stream.Collectors;
 
 import org.json.JSONArray;
@@ -14,41 +12,76 @@ import org.json.JSONObject;
 import mapek.AdaptationOption;
 import mapek.Goal;
 import mapek.Goals;
+import smc.Deadline;
+import smc.VerificationScheduler;
 import util.ConfigLoader;
 
 public class MachineLearning extends SMCConnector {
    
 	private int lastLearningIndex = 0;
-	private boolean overTime = false;
-	Timer timer;
-
-	private void initializeTimer(int seconds) {
-		overTime = false;
-		timer = new Timer();
-		timer.schedule(new TimerTask() {
-			@Override
-			public void run() {
-				overTime = true;
-			}
-		}, seconds * 1000);
-	}
-
-	private void destructTimer() {
-		timer.cancel();
-	}
+	// The moment at which the verifications of the current cycle are stopped
+	private Deadline deadline = Deadline.NONE;
+	// Orders the options to verify on their predicted verification time (null if disabled)
+	private final VerificationScheduler scheduler =
+		ConfigLoader.getInstance().isCostSchedulingEnabled() ? new VerificationScheduler() : null;
+	// Streams the options of the testing cycles through the learner and the verification (null if disabled)
+	private final TestingPipeline pipeline =
+		ConfigLoader.getInstance().isTestingPipelineEnabled() ? new TestingPipeline(this) : null;
 
 
 	@Override
 	public void startVerification() {
-		initializeTimer(ConfigLoader.getInstance().getTimeCap());
+		deadline = getCycleDeadline();
 		
 		if (cycles <= TRAINING_CYCLE) {
 			training();
 		} else {
 			testing();
 		}
+	}
+
 
-		destructTimer();
+	@Override
+	Deadline createCycleDeadline() {
+		return getTimeCapDeadline();
+	}
+
+
+	@Override
+	public void printStatistics() {
+		super.printStatistics();
+		if (pipeline != null) {
+			pipeline.printStatistics();
+		}
+	}
+
+
+	/**
+	 * Verifies the given options before the deadline, lazily if configured (see {@link smc.VerificationEngine#checkCAOsLazily}).
+	 */
+	private void verifyOptions(List<AdaptationOption> options) {
+		if (ConfigLoader.getInstance().isLazyVerificationEnabled()) {
+			long skipped = verificationEngine.getSkippedVerifications();
+			verificationEngine.checkCAOsLazily(options, environment, deadline, getPlanningGoals());
+			System.out.print(";skipped:" + (verificationEngine.getSkippedVerifications() - skipped));
+		} else {
+			verificationEngine.checkCAOs(options, environment, deadline);
+		}
+	}
+
+
+	/**
+	 * Verifies the given options (see {@link #verifyOptions(List)}), in the order of the scheduler if it is enabled.
+	 * @param classes the class the learner predicted for each of the options.
+	 */
+	void verifyOptions(List<AdaptationOption> options, List<Integer> classes) {
+		if (scheduler == null) {
+			verifyOptions(options);
+			return;
+		}
+		List<AdaptationOption> scheduled = scheduler.schedule(options, classes, verificationEngine, environment, deadline);
+		verifyOptions(scheduled);
+		scheduler.recordOutcomes(options, classes, getPlanningGoals());
 	}
 
 
@@ -56,19 +89,19 @@ public class MachineLearning extends SMCConnector {
 		// Formally verify all the adaptation options, and send them to the learners for training
 		int amtOptions = adaptationOptions.size();
 
-		AdaptationOption adaptationOption;
+		List<AdaptationOption> orderedOptions = new ArrayList<>(amtOptions);
 		for (int i = 0; i < amtOptions; i++) {
-			int actualIndex = (i + lastLearningIndex) % amtOptions;
+			orderedOptions.add(adaptationOptions.get((i + lastLearningIndex) % amtOptions));
+		}
 
-			if (overTime) {
-				lastLearningIndex = actualIndex;
+		verifyOptions(orderedOptions);
+
+		// Continue from the first option which could not be verified in time during the next cycle
+		for (int i = 0; i < amtOptions; i++) {
+			if (!orderedOptions.get(i).isVerified) {
+				lastLearningIndex = (i + lastLearningIndex) % amtOptions;
 				break;
 			}
-
-			adaptationOption = adaptationOptions.get(actualIndex);
-			smcChecker.checkCAO(adaptationOption.toModelString(), environment.toModelString(),
-				adaptationOption.verificationResults);
-			adaptationOption.isVerified = true;
 		}
 
 		send(adaptationOptions.stream().filter(o -> o.isVerified).collect(Collectors.toList()), taskType, Mode.TRAINING);
@@ -76,6 +109,10 @@ public class MachineLearning extends SMCConnector {
 
 
 	private void testing() {
+		if (pipeline != null) {
+			pipeline.run(deadline);
+			return;
+		}
 		if (taskType == TaskType.CLASSIFICATION || taskType == TaskType.REGRESSION) {
 			testing1Goal();
 		} else if (taskType == TaskType.PLLAMULTICLASS || taskType == TaskType.PLLAMULTIREGR) {
@@ -101,6 +138,8 @@ public class MachineLearning extends SMCConnector {
 		
 		// No exploration for single goal verification
 		List<Integer> overallIndices = new ArrayList<>();
+		// Whether the learner predicted the option to meet the goal (1) or not (0), for the scheduler
+		List<Integer> classes = new ArrayList<>();
 		Goal pl = goals.getPacketLossGoal();
 
 		if (adaptationSpace != 0) {
@@ -112,27 +151,20 @@ public class MachineLearning extends SMCConnector {
 				if (prediction) {
 					overallIndices.add(i);
 				}
+				classes.add(prediction ? 1 : 0);
 			}
 		} else {
 			for (int i = 0; i < adaptationOptions.size(); i++) {
 				overallIndices.add(i);
+				classes.add(0);
 			}
 		}
 
 		// Fair distribution of options in case not all of them can be verified
 		Collections.shuffle(overallIndices);
 
-		AdaptationOption option;
-
-		for (Integer index : overallIndices) {
-			if (overTime) {
-				break;
-			}
-			option = adaptationOptions.get(index);
-			smcChecker.checkCAO(option.toModelString(), environment.toModelString(),
-				option.verificationResults);
-			option.isVerified = true;
-		}
+		verifyOptions(overallIndices.stream().map(i -> adaptationOptions.get(i)).collect(Collectors.toList()),
+			overallIndices.stream().map(i -> classes.get(i)).collect(Collectors.toList()));
 
 		List<AdaptationOption> learningOptions = 
 			adaptationOptions.stream().filter(o -> o.isVerified).collect(Collectors.toList());
@@ -144,22 +176,19 @@ public class MachineLearning extends SMCConnector {
 	}
 
 
-	private void testing2Goals() {
-		// Send the adaptation options to the learner with mode testing, returns the predictions of the learner
-		JSONObject response = send(adaptationOptions, taskType, Mode.TESTING);
-		
-		// The different prediction classes in case of 2 goals (latency & packet loss)
-		int[] amtPredClass = {0, 0, 0, 0};
-		ArrayList<Integer> predictions = new ArrayList<>();
+	/**
+	 * @return the class the learner predicted for each of the options in case of 2 goals:
+	 *   0 - no goals are met, 1 - packet loss goal is met, 2 - latency goal is met, 3 - both goals are met.
+	 */
+	List<Integer> getPredictedClasses(JSONObject response) {
+		List<Integer> predictions = new ArrayList<>();
 
 		switch (taskType) {
 			case PLLAMULTICLASS:
 				JSONArray pred = response.getJSONArray("predictions");
 
 				for (int i = 0; i < pred.length(); i++) {
-					int predictedClass = Integer.parseInt(pred.get(i).toString());
-					amtPredClass[predictedClass]++;
-					predictions.add(predictedClass);
+					predictions.add(Integer.parseInt(pred.get(i).toString()));
 				}
 				break;
 
@@ -171,11 +200,9 @@ public class MachineLearning extends SMCConnector {
 				Goal la = Goals.getInstance().getLatencyGoal();
 
 				for (int i = 0; i < pred_la.length(); i++) {
-					int predictedClass = 
+					predictions.add(
 						(pl.evaluate(Double.parseDouble(pred_pl.get(i).toString())) ? 1 : 0) +
-						(la.evaluate(Double.parseDouble(pred_la.get(i).toString())) ? 2 : 0);
-					amtPredClass[predictedClass]++;
-					predictions.add(predictedClass);
+						(la.evaluate(Double.parseDouble(pred_la.get(i).toString())) ? 2 : 0));
 				}
 				break;
 
@@ -183,6 +210,20 @@ public class MachineLearning extends SMCConnector {
 				throw new RuntimeException(
 					String.format("Trying to do testing for 2 goals with incompatible task type '%s'.", taskType.val));
 		}
+		return predictions;
+	}
+
+
+	private void testing2Goals() {
+		// Send the adaptation options to the learner with mode testing, returns the predictions of the learner
+		JSONObject response = send(adaptationOptions, taskType, Mode.TESTING);
+		
+		// The different prediction classes in case of 2 goals (latency & packet loss)
+		int[] amtPredClass = {0, 0, 0, 0};
+		List<Integer> predictions = getPredictedClasses(response);
+		for (int predictedClass : predictions) {
+			amtPredClass[predictedClass]++;
+		}
 		
 		// The indices for the options of the best class predicted
 		List<Integer> indicesMain = new ArrayList<>();
@@ -230,19 +271,9 @@ public class MachineLearning extends SMCConnector {
 		overallIndices.addAll(indicesMain);
 		overallIndices.addAll(indicesSub);
 
-		
-		AdaptationOption adaptationOption;
 
-		for (Integer index : overallIndices) {
-			if (overTime) {
-				break;
-			}
-			
-			adaptationOption = adaptationOptions.get(index);
-			smcChecker.checkCAO(adaptationOption.toModelString(), environment.toModelString(),
-				adaptationOption.verificationResults);
-			adaptationOption.isVerified = true;
-		}
+		verifyOptions(overallIndices.stream().map(i -> adaptationOptions.get(i)).collect(Collectors.toList()),
+			overallIndices.stream().map(i -> predictions.get(i)).collect(Collectors.toList()));
 
 		List<AdaptationOption> learningOptions = 
 			adaptationOptions.stream().filter(o -> o.isVerified).collect(Collectors.toList());
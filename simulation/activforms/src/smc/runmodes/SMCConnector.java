@@ -7,7 +7,9 @@
 
 package smc.runmodes;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
@@ -21,8 +23,9 @@ import mapek.AdaptationOption;
 import mapek.Environment;
 import mapek.Goal;
 import mapek.Goals;
+import smc.Deadline;
 import smc.FeatureSelection;
-import smc.SMCChecker;
+import smc.VerificationEngine;
 import util.ConfigLoader;
 
 
@@ -31,13 +34,17 @@ abstract public class SMCConnector {
 
 	List<AdaptationOption> adaptationOptions;
 	Environment environment;
-	SMCChecker smcChecker = new SMCChecker();
+	VerificationEngine verificationEngine = VerificationEngine.create();
 	Goals goals = Goals.getInstance();
 	List<AdaptationOption> verifiedOptions;
 	FeatureSelection featureSelection;
+	// The option the planner falls back on (null if the feedback loop did not set one)
+	AdaptationOption failsafeOption;
 
 	final int TRAINING_CYCLE = ConfigLoader.getInstance().getAmountOfLearningCycles();
 	int cycles = 1;
+	// The moment at which the verifications of the current cycle are stopped (null until the cycle needs it)
+	private Deadline cycleDeadline = null;
 	TaskType taskType;
 
 
@@ -46,6 +53,7 @@ abstract public class SMCConnector {
 		MACHINELEARNING("machinelearning"),
 		ACTIVFORMS("activforms"), 
 		COMPARISON("comparison"),
+		ANYTIME("anytime"),
 
 		// NOTE: training and testing should only be used internally
 		TRAINING("training"), 
@@ -74,6 +82,8 @@ abstract public class SMCConnector {
 					return new ActivForms();
 				case COMPARISON:
 					return new Comparison();
+				case ANYTIME:
+					return new Anytime();
 				default:
 					throw new UnsupportedOperationException(String.format("No connector is linked with run mode: %s", this.val));
 			}
@@ -120,11 +130,82 @@ abstract public class SMCConnector {
 		this.environment = environment;
 	}
 
+	/**
+	 * @param failsafeOption the adaptation option (of the current options) which is safe to fall back on.
+	 */
+	public void setFailsafeOption(AdaptationOption failsafeOption) {
+		this.failsafeOption = failsafeOption;
+	}
+
 	public void verify() {
 		startVerification();
+		endCycle();
+	}
+
+	/**
+	 * Verifies the options which were set as a refinement of the options of the current cycle (see
+	 * {@link #startVerification()}), within the deadline of the cycle. Refinements are only verified: they are not
+	 * sent to the learners and do not count as a cycle, the cycle ends with {@link #endCycle()}.
+	 */
+	public void verifyRefinement() {
+		verificationEngine.checkCAOs(adaptationOptions, environment, getCycleDeadline());
+	}
+
+	/**
+	 * Ends the current cycle (and its deadline).
+	 */
+	public void endCycle() {
+		cycleDeadline = null;
 		cycles++;
 	}
 
+	/**
+	 * @return the deadline of the current cycle, shared by all the verifications of the cycle.
+	 */
+	Deadline getCycleDeadline() {
+		if (cycleDeadline == null) {
+			cycleDeadline = createCycleDeadline();
+		}
+		return cycleDeadline;
+	}
+
+	/**
+	 * @return the deadline of a cycle which starts now (none by default, the run modes with a time cap override this).
+	 */
+	Deadline createCycleDeadline() {
+		return Deadline.NONE;
+	}
+
+	/**
+	 * @return a deadline after the time cap of a cycle.
+	 */
+	static Deadline getTimeCapDeadline() {
+		return Deadline.after(ConfigLoader.getInstance().getTimeCap(), TimeUnit.SECONDS);
+	}
+
+	public VerificationEngine getVerificationEngine() {
+		return verificationEngine;
+	}
+
+	/**
+	 * Prints the statistics gathered over all cycles (those of the verification engine by default).
+	 */
+	public void printStatistics() {
+		verificationEngine.printStatistics();
+	}
+
+	/**
+	 * @return the goals which the planner evaluates for the task type (besides optimizing the energy consumption).
+	 */
+	public List<Goal> getPlanningGoals() {
+		List<Goal> planningGoals = new ArrayList<>();
+		planningGoals.add(goals.getPacketLossGoal());
+		if (taskType == TaskType.PLLAMULTICLASS || taskType == TaskType.PLLAMULTIREGR) {
+			planningGoals.add(goals.getLatencyGoal());
+		}
+		return planningGoals;
+	}
+
 	abstract public void startVerification();
 
 
@@ -149,13 +230,11 @@ abstract public class SMCConnector {
 
 		dataset.put("features", features);
 		dataset.put("target", target);
-		
-		Goal pl = goals.getPacketLossGoal();
 
 		for (AdaptationOption adaptationOption : adaptationOptions) {
 			// Decide the target for the adaptation option (dependent on the task type)
 			if (task == TaskType.CLASSIFICATION) {
-				target.put(pl.evaluate(adaptationOption.verificationResults.packetLoss) ? 1 : 0);
+				target.put(goals.meetsPacketLossGoal(adaptationOption.verificationResults) ? 1 : 0);
 			} else if (task == TaskType.REGRESSION) {
 				target.put(adaptationOption.verificationResults.packetLoss);
 			} else if(task == TaskType.PLLAMULTICLASS) {
@@ -168,7 +247,7 @@ abstract public class SMCConnector {
 
 				Goal la = goals.getLatencyGoal();
 
-				if (pl.evaluate(adaptationOption.verificationResults.packetLoss)) APClass += 1;
+				if (goals.meetsPacketLossGoal(adaptationOption.verificationResults)) APClass += 1;
 				if (la.evaluate(adaptationOption.verificationResults.latency)) APClass += 2;
 
 				target.put(APClass);
@@ -226,6 +305,22 @@ abstract public class SMCConnector {
 	 * @return The response from the server.
 	 */
 	protected JSONObject send(JSONObject dataset, String taskType, String mode) {
+		// Keep track of how long it takes to perform the given task at the end of the webserver
+		long start = System.currentTimeMillis();
+
+		JSONObject response = post(dataset, taskType, mode);
+
+		// Print the time it took for the webserver to send an answer back
+		System.out.print(";" + (System.currentTimeMillis() - start));
+		return response;
+	}
+
+
+	/**
+	 * Sends the provided dataset to the webserver running the machine learner, without reporting the time it took.
+	 * See {@link #send(JSONObject, String, String) send(JSONObject, String, String)} for more information.
+	 */
+	JSONObject post(JSONObject dataset, String taskType, String mode) {
 		try {
 			HttpClient client = HttpClientBuilder.create().build();
 			
@@ -241,15 +336,9 @@ abstract public class SMCConnector {
 			// Here you give as payload the json dataset to send in the form of a string
 			http.setEntity(new StringEntity(dataset.toString()));
 			http.setHeader("Content-Type", "application/json");
-			
-			// Keep track of how long it takes to perform the given task at the end of the webserver
-			long start = System.currentTimeMillis();
 
 			JSONObject response = new JSONObject(client.execute(http, new BasicResponseHandler()));
 			
-			// Print the time it took for the webserver to send an answer back
-			System.out.print(";" + (System.currentTimeMillis() - start));
-			
 			// TODO: make it able to abort the whole proces when you receive an error from the ML
 
 			return response;
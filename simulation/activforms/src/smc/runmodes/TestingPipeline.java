@@ -0,0 +1,334 @@
+package smc.runmodes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import mapek.AdaptationOption;
+import mapek.Goal;
+import smc.Deadline;
+import smc.runmodes.SMCConnector.Mode;
+import smc.runmodes.SMCConnector.TaskType;
+import util.ConfigLoader;
+
+/**
+ * Streams the adaptation options of a testing cycle of the machine learning run mode through bounded queues:
+ *   compose -> featurize -> predict -> verify -> plan
+ * Chunks of options are taken from the adaptation space in a random order (compose), turned into the features of
+ * the learner (featurize) and sent to the learner for their predictions (predict). The options which are predicted
+ * to meet all the goals are verified (verify) while the next chunks are still being predicted, and the best verified
+ * option so far is kept (plan). Every stage runs on its own thread.
+ * The decisions which need all the predictions (verifying all the options if none is predicted to meet the goals,
+ * and the exploration of the other classes in case of 2 goals) are taken once the stream ends, as in the regular testing.
+ */
+class TestingPipeline {
+
+	private static final String[] STAGES = { "compose", "featurize", "predict", "verify", "plan" };
+
+	// Marks the end of the stream
+	private static final Chunk END = new Chunk(Collections.emptyList());
+
+	private final MachineLearning connector;
+	private final int chunkSize;
+	private final int queueCapacity;
+
+	private final ExecutorService threads = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "testing-pipeline");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// Statistics of every stage, over all cycles
+	private final Map<String, StageStatistics> statistics = new LinkedHashMap<>();
+	// Time from the start of a cycle until the plan stage knows an option which meets the goals
+	private long firstPlanNanos = 0;
+	private long plannedCycles = 0;
+
+	TestingPipeline(MachineLearning connector) {
+		this.connector = connector;
+		ConfigLoader config = ConfigLoader.getInstance();
+		chunkSize = Math.max(1, Integer.parseInt(config.getProperty("testingPipeline.chunkSize", "64").trim()));
+		queueCapacity = Math.max(1, Integer.parseInt(config.getProperty("testingPipeline.queueCapacity", "4").trim()));
+		for (String stage : STAGES) {
+			statistics.put(stage, new StageStatistics());
+		}
+	}
+
+	/**
+	 * Runs the testing of a cycle, and sends the verified options to the learner for online learning.
+	 */
+	void run(Deadline deadline) {
+		List<AdaptationOption> adaptationOptions = connector.adaptationOptions;
+		boolean twoGoals = connector.taskType == TaskType.PLLAMULTICLASS || connector.taskType == TaskType.PLLAMULTIREGR;
+		// The class of the options which are verified while streaming
+		int streamedClass = twoGoals ? 3 : 1;
+
+		BlockingQueue<Chunk> featurizeQueue = new ArrayBlockingQueue<>(queueCapacity);
+		BlockingQueue<Chunk> predictQueue = new ArrayBlockingQueue<>(queueCapacity);
+		BlockingQueue<Chunk> verifyQueue = new ArrayBlockingQueue<>(queueCapacity);
+		BlockingQueue<Chunk> planQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+		// Options which are not verified while streaming, and their classes (only used by the verify stage)
+		List<AdaptationOption> deferred = new ArrayList<>();
+		List<Integer> deferredClasses = new ArrayList<>();
+		boolean[] streamed = { false };
+		long[] learnerTime = { 0 };
+		AdaptationOption[] incumbent = { null };
+		long cycleStart = System.nanoTime();
+
+		List<Callable<Void>> stages = new ArrayList<>();
+		stages.add(() -> {
+			compose(adaptationOptions, deadline, featurizeQueue);
+			return null;
+		});
+		stages.add(stage("featurize", featurizeQueue, predictQueue,
+			chunk -> chunk.dataset = connector.parse(chunk.options, connector.taskType)));
+		stages.add(stage("predict", predictQueue, verifyQueue, chunk -> {
+			long start = System.currentTimeMillis();
+			JSONObject response = connector.post(chunk.dataset, connector.taskType.val, Mode.TESTING.val);
+			learnerTime[0] += System.currentTimeMillis() - start;
+			if (response == null || !(response.has("predictions") || response.has("predictions_pl"))) {
+				throw new RuntimeException("The learner did not return predictions for the options.");
+			}
+			chunk.classes = twoGoals ? connector.getPredictedClasses(response) : getPredictedClasses(response);
+		}));
+		stages.add(stage("verify", verifyQueue, planQueue, chunk -> {
+			List<AdaptationOption> selected = new ArrayList<>();
+			List<Integer> selectedClasses = new ArrayList<>();
+			for (int i = 0; i < chunk.options.size(); i++) {
+				if (chunk.classes.get(i) == streamedClass) {
+					selected.add(chunk.options.get(i));
+					selectedClasses.add(streamedClass);
+				} else {
+					deferred.add(chunk.options.get(i));
+					deferredClasses.add(chunk.classes.get(i));
+				}
+			}
+			if (!selected.isEmpty()) {
+				streamed[0] = true;
+				connector.verifyOptions(selected, selectedClasses);
+			}
+		}));
+		stages.add(stage("plan", planQueue, null, chunk -> {
+			for (AdaptationOption option : chunk.options) {
+				if (option.isVerified && meetsGoals(option)
+						&& connector.goals.optimizeGoalEnergyConsumption(incumbent[0], option)) {
+					if (incumbent[0] == null) {
+						firstPlanNanos += System.nanoTime() - cycleStart;
+						plannedCycles++;
+					}
+					incumbent[0] = option;
+				}
+			}
+		}));
+
+		runStages(stages);
+
+		// The decisions which need all the predictions
+		List<AdaptationOption> remaining = new ArrayList<>();
+		List<Integer> remainingClasses = new ArrayList<>();
+		double explorationPercentage = twoGoals ? ConfigLoader.getInstance().getExplorationPercentage() : 0;
+		if (streamed[0]) {
+			// The other classes are only explored (in case of 2 goals)
+			select(deferred, deferredClasses, c -> c == 1 || c == 2, explorationPercentage, remaining, remainingClasses);
+		} else if (twoGoals && deferredClasses.stream().anyMatch(c -> c != 0)) {
+			select(deferred, deferredClasses, c -> c != 0, 1, remaining, remainingClasses);
+			select(deferred, deferredClasses, c -> c == 0, explorationPercentage, remaining, remainingClasses);
+		} else {
+			// None of the options is predicted to meet (one of) the goals
+			remaining.addAll(deferred);
+			remainingClasses.addAll(deferredClasses);
+		}
+		if (!remaining.isEmpty()) {
+			connector.verifyOptions(remaining, remainingClasses);
+		}
+
+		System.out.print(";" + learnerTime[0]);
+
+		List<AdaptationOption> learningOptions =
+			adaptationOptions.stream().filter(o -> o.isVerified).collect(Collectors.toList());
+		System.out.print(";" + learningOptions.size());
+
+		// Perform online learning on the samples that were verified
+		connector.send(learningOptions, connector.taskType, Mode.TRAINING);
+	}
+
+	/**
+	 * Puts the options in chunks, in a random order (to ensure all options are reached after some time in case not
+	 * all of them can be verified each cycle), until all options are composed or the deadline expires.
+	 */
+	private void compose(List<AdaptationOption> adaptationOptions, Deadline deadline, BlockingQueue<Chunk> output)
+			throws InterruptedException {
+		StageStatistics stats = statistics.get("compose");
+		List<Integer> order = new ArrayList<>(adaptationOptions.size());
+		for (int i = 0; i < adaptationOptions.size(); i++) {
+			order.add(i);
+		}
+		Collections.shuffle(order);
+
+		for (int start = 0; start < order.size() && !deadline.hasExpired(); start += chunkSize) {
+			long startTime = System.nanoTime();
+			List<AdaptationOption> options = new ArrayList<>(chunkSize);
+			for (int i : order.subList(start, Math.min(start + chunkSize, order.size()))) {
+				options.add(adaptationOptions.get(i));
+			}
+			stats.add(options.size(), System.nanoTime() - startTime, output.size());
+			output.put(new Chunk(options));
+		}
+		// Not put if composing is interrupted: the other stages are then cancelled as well, and nothing takes from
+		// the (possibly full) output anymore
+		output.put(END);
+	}
+
+	/**
+	 * @return a stage which applies the work to every chunk of its input, and passes the chunk on to its output.
+	 */
+	private Callable<Void> stage(String name, BlockingQueue<Chunk> input, BlockingQueue<Chunk> output, Consumer<Chunk> work) {
+		StageStatistics stats = statistics.get(name);
+		return () -> {
+			while (true) {
+				Chunk chunk = input.take();
+				if (chunk == END) {
+					if (output != null) {
+						output.put(END);
+					}
+					return null;
+				}
+				int depth = input.size();
+				long start = System.nanoTime();
+				work.accept(chunk);
+				stats.add(chunk.options.size(), System.nanoTime() - start, depth);
+				if (output != null) {
+					output.put(chunk);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Runs the stages until the stream ends, the first stage that fails stops the others.
+	 */
+	private void runStages(List<Callable<Void>> stages) {
+		CompletionService<Void> completion = new ExecutorCompletionService<>(threads);
+		List<Future<Void>> futures = new ArrayList<>();
+		for (Callable<Void> stage : stages) {
+			futures.add(completion.submit(stage));
+		}
+
+		try {
+			for (int i = 0; i < stages.size(); i++) {
+				completion.take().get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException("The testing pipeline failed.", e.getCause());
+		} finally {
+			for (Future<Void> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * @return whether the learner predicted each option to meet the packet loss goal (1) or not (0), in case of 1 goal.
+	 */
+	private List<Integer> getPredictedClasses(JSONObject response) {
+		Goal pl = connector.goals.getPacketLossGoal();
+		JSONArray predictions = response.getJSONArray("predictions");
+		List<Integer> classes = new ArrayList<>(predictions.length());
+		for (int i = 0; i < predictions.length(); i++) {
+			float prediction = Float.parseFloat(predictions.get(i).toString());
+			boolean meetsGoal = connector.taskType == TaskType.CLASSIFICATION ? prediction == 1.0 : pl.evaluate(prediction);
+			classes.add(meetsGoal ? 1 : 0);
+		}
+		return classes;
+	}
+
+	private boolean meetsGoals(AdaptationOption option) {
+		for (Goal goal : connector.getPlanningGoals()) {
+			if (!connector.goals.meetsGoal(goal, option.verificationResults)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the given fraction of the options of which the class is accepted (they are in a random order already).
+	 */
+	private static void select(List<AdaptationOption> options, List<Integer> classes,
+			IntPredicate accept, double fraction, List<AdaptationOption> selected,
+			List<Integer> selectedClasses) {
+		List<Integer> indices = new ArrayList<>();
+		for (int i = 0; i < options.size(); i++) {
+			if (accept.test(classes.get(i))) {
+				indices.add(i);
+			}
+		}
+		for (int i : indices.subList(0, (int) Math.floor(indices.size() * fraction))) {
+			selected.add(options.get(i));
+			selectedClasses.add(classes.get(i));
+		}
+	}
+
+	void printStatistics() {
+		statistics.forEach((stage, stats) -> System.out.println(String.format("Testing pipeline %s: %s", stage, stats)));
+		System.out.println(String.format("Testing pipeline: an option meeting the goals was planned in %d cycles, after %.1f ms on average",
+			plannedCycles, plannedCycles == 0 ? 0.0 : firstPlanNanos / 1e6 / plannedCycles));
+	}
+
+	private static class Chunk {
+		final List<AdaptationOption> options;
+		JSONObject dataset;
+		List<Integer> classes;
+
+		Chunk(List<AdaptationOption> options) {
+			this.options = options;
+		}
+	}
+
+	/**
+	 * Throughput of a stage (options per second it is busy) and the depth of its input queue when it takes a chunk
+	 * (the depth of the output queue for the compose stage).
+	 */
+	private static class StageStatistics {
+		private long options = 0;
+		private long chunks = 0;
+		private long busyNanos = 0;
+		private long depthSum = 0;
+		private int maxDepth = 0;
+
+		synchronized void add(int amtOptions, long nanos, int depth) {
+			options += amtOptions;
+			chunks++;
+			busyNanos += nanos;
+			depthSum += depth;
+			maxDepth = Math.max(maxDepth, depth);
+		}
+
+		@Override
+		public synchronized String toString() {
+			return String.format("%d options in %d chunks, %.1f options/s, queue depth %.2f on average (max %d)",
+				options, chunks, busyNanos == 0 ? 0.0 : options * 1e9 / busyNanos,
+				chunks == 0 ? 0.0 : (double) depthSum / chunks, maxDepth);
+		}
+	}
+}
@@ -48,6 +48,11 @@ public class ConfigLoader {
 		}
 	}
 
+	public String getProperty(String key, String defaultValue) {
+		String property = properties.getProperty(key);
+		return property != null ? property.trim() : defaultValue;
+	}
+
 	public int getAmountOfLearningCycles() {
 		return Integer.parseInt(this.getProperty("amountOfLearningCycles"));
 	}
@@ -68,6 +73,60 @@ public class ConfigLoader {
 		return Integer.parseInt(this.getProperty("cappedVerificationTime"));
 	}
 
+	public int getVerificationThreads() {
+		int threads = Integer.parseInt(this.getProperty("verificationThreads", "0"));
+		// Zero (or no value) means one verification worker per available core
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	public boolean isLazyVerificationEnabled() {
+		return this.getProperty("lazyVerification", "false").trim().toLowerCase().equals("true");
+	}
+
+	public boolean isCostSchedulingEnabled() {
+		return this.getProperty("costScheduling", "false").trim().toLowerCase().equals("true");
+	}
+
+	public boolean isTestingPipelineEnabled() {
+		return this.getProperty("testingPipeline", "false").trim().toLowerCase().equals("true");
+	}
+
+	public boolean isIncrementalVerificationEnabled() {
+		return this.getProperty("incrementalVerification", "false").trim().toLowerCase().equals("true");
+	}
+
+	public boolean isVerifierTelemetryEnabled() {
+		return this.getProperty("verifierTelemetry", "false").trim().toLowerCase().equals("true");
+	}
+
+	public boolean isOptionDeduplicationEnabled() {
+		return this.getProperty("optionDeduplication", "false").trim().toLowerCase().equals("true");
+	}
+
+	public boolean isBoundPruningEnabled() {
+		return this.getProperty("boundPruning", "false").trim().toLowerCase().equals("true");
+	}
+
+	public boolean isAdaptiveGridEnabled() {
+		return this.getProperty("adaptiveGrid", "false").trim().toLowerCase().equals("true");
+	}
+
+	public boolean isScreeningEnabled() {
+		return this.getProperty("screening", "false").trim().toLowerCase().equals("true");
+	}
+
+	public int getVerificationCacheSize() {
+		return Integer.parseInt(this.getProperty("verificationCacheSize", "0"));
+	}
+
+	public String getVerificationStore() {
+		return this.getProperty("verificationStore", "");
+	}
+
+	public String getVerificationEngine() {
+		return this.getProperty("verificationEngine", "verifyta").trim().toLowerCase();
+	}
+
 	public SMCConnector.Mode getRunMode() {
 		return SMCConnector.Mode.getMode(this.getProperty("runMode").toLowerCase());
 	}
@@ -87,7 +87,16 @@ public class Gateway extends Node {
 	}
 
 	public int getExpectedPackets(RunInfo runInfo) {
-		return expectedPacketCount.get(runInfo.getRunNumber());
+		// No packets are expected in a run in which none of the motes sends
+		return expectedPacketCount.getOrDefault(runInfo.getRunNumber(), 0);
+	}
+
+	/**
+	 * @return the amount of distinct packets generated in the given run which reached this gateway (so far).
+	 */
+	public int getReceivedPackets(int run) {
+		List<Packet> packets = packetStore.get(run);
+		return packets == null ? 0 : (int) packets.stream().distinct().count();
 	}
 
 	public void reportPacketLost(Packet packet) {
@@ -168,9 +177,8 @@ public class Gateway extends Node {
 				}
 			}
 		} else {
-			packetLoss = (double) Link.lostPackets / Link.sentPackets;
-			Link.lostPackets = 0;
-			Link.sentPackets = 0;
+			packetLoss = (double) runInfo.getLostPackets() / runInfo.getSentPackets();
+			runInfo.resetPacketCounts();
 		}
 
 		return packetLoss * 100;
@@ -1,5 +1,7 @@
 package domain;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 public class Link {
 
 	private Node from;
@@ -15,9 +17,6 @@ public class Link {
 	private SNREquation snrEquation = new SNREquation(0, 0);
 	private Profile<Double> interference = new Constant<>(0.0);
 
-	public static int sentPackets = 0;
-	public static int lostPackets = 0;
-
 	// Constructor
 	Link(Node from, Node to, Gateway direction, int powerNumber, int distribution) {
 		this.from = from;
@@ -32,12 +31,12 @@ public class Link {
 		int packetLoss = calculatePacketLoss(runInfo);
 
 		// System.out.println(this + ": packetLoss" + packetLoss);
-		if (Math.random() * 100 + 1 > packetLoss) {
-			sentPackets++;
+		if (ThreadLocalRandom.current().nextDouble() * 100 + 1 > packetLoss) {
+			runInfo.reportSentPacket();
 			to.receivePacket(packet, runInfo);
 		} else {
 //			 /System.out.println("packet is lost");
-			lostPackets++;
+			runInfo.reportLostPacket();
 			direction.reportPacketLost(packet);
 		}
 	}
@@ -5,6 +5,7 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Mote extends Node {
 
@@ -139,7 +140,7 @@ public class Mote extends Node {
 		}
 		// 2. For each packet choose a destination
 		for (Packet packet : myPackets) {
-			int rand = (int) Math.round(Math.random() * totalDistribution);
+			int rand = (int) Math.round(ThreadLocalRandom.current().nextDouble() * totalDistribution);
 			int countDistribution = 0;
 			for (Link link : links) {
 				countDistribution += link.getDistribution();
@@ -210,7 +211,7 @@ public class Mote extends Node {
 			}
 			// else the distribution is handled like weights
 			else {
-				int rand = (int) Math.round(Math.random() * totalDistribution);
+				int rand = (int) Math.round(ThreadLocalRandom.current().nextDouble() * totalDistribution);
 				int countDistribution = 0;
 				for (Link link : possibleLinks) {
                     countDistribution += link.getDistribution();
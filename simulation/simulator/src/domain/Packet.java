@@ -1,12 +1,15 @@
 package domain;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class Packet {
 
 	private Mote source;
 	private int number;
 	private int run;
 	private Gateway destination;
-	private static int identifier = 1;
+	// Shared by the simulations which run at the same time on different threads
+	private static final AtomicInteger identifier = new AtomicInteger(1);
 	private int id;
 
 	public Packet(Mote source, Gateway destination, int number, int run) {
@@ -14,7 +17,7 @@ public class Packet {
 		this.destination = destination;
 		this.number = number;
 		this.run = run;
-		id = identifier++;
+		id = identifier.getAndIncrement();
 	}
 
 	public Mote getSource() {
@@ -5,6 +5,10 @@ public class RunInfo {
 	private Profile<Double> globalInterference = new Constant<>(0.0);
 	private int runNumber = 0;
 
+	// Packets sent and lost over the links of this simulation (since the last packet loss calculation)
+	private int sentPackets = 0;
+	private int lostPackets = 0;
+
 	public RunInfo() {
 
 	}
@@ -28,4 +32,25 @@ public class RunInfo {
 	public void incrementRunNumber() {
 		runNumber += 1;
 	}
+
+	public int getSentPackets() {
+		return sentPackets;
+	}
+
+	public int getLostPackets() {
+		return lostPackets;
+	}
+
+	void reportSentPacket() {
+		sentPackets++;
+	}
+
+	void reportLostPacket() {
+		lostPackets++;
+	}
+
+	void resetPacketCounts() {
+		sentPackets = 0;
+		lostPackets = 0;
+	}
 }